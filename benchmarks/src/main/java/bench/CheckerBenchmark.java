@@ -0,0 +1,57 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import checker.SemanticChecker;
+import parser.GoLexer;
+import parser.GoParser;
+
+/*
+ * Measures the semantic checker on programs with tens of thousands of
+ * variables and functions, where the cost of the table lookups shows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckerBenchmark {
+
+	// Functions, each with VARS_PER_FUNCTION variables and its argument
+	@Param({ "1000", "10000", "25000" })
+	public int functions;
+
+	private ParseTree tree;
+
+	@Setup
+	public void setup() {
+		String source = ProgramGenerator.generate(ProgramGenerator.Shape.DECLARATIONS, functions);
+		GoParser parser = new GoParser(new CommonTokenStream(new GoLexer(CharStreams.fromString(source))));
+		tree = parser.program();
+		if (parser.getNumberOfSyntaxErrors() != 0) throw new Error("Generated program has syntax errors! Aborting");
+	}
+
+	@Benchmark
+	public SemanticChecker check() {
+		SemanticChecker checker = new SemanticChecker();
+		checker.visit(tree);
+		return checker;
+	}
+
+}
@@ -0,0 +1,111 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import checker.SemanticChecker;
+import code.Interpreter;
+import exec.TreeInterpreter;
+import jit.JitCompiler;
+import jit.JitProgram;
+import parser.GoLexer;
+import parser.GoParser;
+
+/*
+ * Compares the AST interpreter (-i), the interpreter over the compiled node
+ * tree (-i2) and the JVM bytecode backend (-jit), running a program made of
+ * nested loops and arithmetic.
+ * The tree interpreter and the jit are measured with their compilation
+ * included, and the jit is also measured running an already loaded class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int n;
+
+	private SemanticChecker checker;
+	private JitProgram jitProgram;
+	private PrintStream stdout;
+
+	@Setup
+	public void setup() {
+		String program =
+			"package main\n" +
+			"import \"fmt\"\n" +
+			"func mix(a int, b float32) float32 {\n" +
+			"	return b * 0.5 + 1.0\n" +
+			"}\n" +
+			"func main() {\n" +
+			"	var sum int = 0\n" +
+			"	var f float32 = 0.0\n" +
+			"	for i := 0; i < " + n + "; i++ {\n" +
+			"		for j := 0; j < " + n + "; j++ {\n" +
+			"			if (i + j) % 3 == 0 {\n" +
+			"				sum += i * j\n" +
+			"			} else {\n" +
+			"				sum -= 1\n" +
+			"			}\n" +
+			"		}\n" +
+			"		f = mix(i, f)\n" +
+			"	}\n" +
+			"	fmt.Println(sum, f)\n" +
+			"}\n";
+
+		GoParser parser = new GoParser(new CommonTokenStream(new GoLexer(CharStreams.fromString(program))));
+		checker = new SemanticChecker();
+		checker.visit(parser.program());
+		jitProgram = new JitCompiler(checker.st, checker.vt, checker.ft).compile(checker.root);
+
+		// The programs print their result, which is not part of the measure
+		stdout = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+
+	@Benchmark
+	public void astInterpreter() {
+		new Interpreter(checker.st, checker.vt, checker.ft).execute(checker.root);
+	}
+
+	@Benchmark
+	public void treeInterpreter() {
+		new TreeInterpreter(checker.st, checker.vt, checker.ft).execute(checker.root);
+	}
+
+	@Benchmark
+	public void jit() {
+		new JitCompiler(checker.st, checker.vt, checker.ft).execute(checker.root);
+	}
+
+	@Benchmark
+	public void jitLoaded() {
+		jitProgram.run();
+	}
+
+}
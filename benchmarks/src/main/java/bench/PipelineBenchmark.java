@@ -0,0 +1,126 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import checker.SemanticChecker;
+import code.CodeGen;
+import code.Interpreter;
+import parser.GoLexer;
+import parser.GoParser;
+
+/*
+ * Measures each stage of the compiler on its own, over generated programs
+ * of increasing size. Each stage starts from the output of the previous
+ * one, which is built once in the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+	// Each stage's input, built from a generated program
+	public abstract static class Stages {
+		String source;
+		ParseTree tree;
+		SemanticChecker checker;
+		private PrintStream stdout;
+
+		void prepare(ProgramGenerator.Shape shape, int size) {
+			source = ProgramGenerator.generate(shape, size);
+
+			GoParser parser = parser(source);
+			tree = parser.program();
+			if (parser.getNumberOfSyntaxErrors() != 0) throw new Error("Generated program has syntax errors! Aborting");
+
+			checker = new SemanticChecker();
+			checker.visit(tree);
+
+			// CodeGen and the interpreter print, which is not part of the measure
+			stdout = System.out;
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		}
+
+		@TearDown
+		public void tearDown() {
+			System.setOut(stdout);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Program extends Stages {
+		@Param({ "LOOPS", "FUNCTIONS", "EXPRESSIONS" })
+		public ProgramGenerator.Shape shape;
+
+		@Param({ "10", "100", "1000" })
+		public int size;
+
+		@Setup
+		public void setup() {
+			prepare(shape, size);
+		}
+	}
+
+	// CodeGen has no function calls, and its programs must fit in the 1024
+	// instructions of the NSTM, so it gets smaller programs without functions
+	@State(Scope.Thread)
+	public static class NstmProgram extends Stages {
+		@Param({ "LOOPS", "EXPRESSIONS" })
+		public ProgramGenerator.Shape shape;
+
+		@Param({ "10", "30", "60" })
+		public int size;
+
+		@Setup
+		public void setup() {
+			prepare(shape, size);
+		}
+	}
+
+	private static GoParser parser(String source) {
+		GoLexer lexer = new GoLexer(CharStreams.fromString(source));
+		return new GoParser(new CommonTokenStream(lexer));
+	}
+
+	@Benchmark
+	public ParseTree lexAndParse(Program p) {
+		return parser(p.source).program();
+	}
+
+	@Benchmark
+	public SemanticChecker check(Program p) {
+		SemanticChecker checker = new SemanticChecker();
+		checker.visit(p.tree);
+		return checker;
+	}
+
+	@Benchmark
+	public void interpret(Program p) {
+		new Interpreter(p.checker.st, p.checker.vt, p.checker.ft).execute(p.checker.root);
+	}
+
+	@Benchmark
+	public void codeGen(NstmProgram p) {
+		new CodeGen(p.checker.st, p.checker.vt).execute(p.checker.root);
+	}
+
+}
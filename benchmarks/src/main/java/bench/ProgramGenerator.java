@@ -0,0 +1,146 @@
+package bench;
+
+/*
+ * Generates Go programs of a given size for the benchmarks. Every program
+ * terminates, reads no input and prints a single line, so it can go through
+ * every stage of the compiler and be run by the interpreters.
+ */
+public final class ProgramGenerator {
+
+	public enum Shape {
+		LOOPS,			// Groups of four nested loops
+		FUNCTIONS,		// Many functions, all called from main
+		EXPRESSIONS,	// Long chains of arithmetic
+		DECLARATIONS	// Many functions, each declaring a few variables
+	}
+
+	private static final int LOOP_DEPTH = 4;
+	private static final int LOOP_BOUND = 3;
+	private static final int VARS_PER_FUNCTION = 4;
+
+	private ProgramGenerator() {}
+
+	public static String generate(Shape shape, int size) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package main\n\n");
+		sb.append("import \"fmt\"\n\n");
+
+		switch (shape) {
+			case LOOPS:			loops(sb, size);		break;
+			case FUNCTIONS:		functions(sb, size);	break;
+			case EXPRESSIONS:	expressions(sb, size);	break;
+			case DECLARATIONS:	declarations(sb, size);	break;
+		}
+		return sb.toString();
+	}
+
+	// size / 4 groups, each running its innermost body LOOP_BOUND ^ LOOP_DEPTH times
+	private static void loops(StringBuilder sb, int size) {
+		int groups = Math.max(1, size / LOOP_DEPTH);
+
+		sb.append("func main() {\n");
+		sb.append("\tvar sum int = 0\n");
+		for (int g = 0; g < groups; g++) {
+			for (int d = 0; d < LOOP_DEPTH; d++) {
+				String var = "i" + g + "_" + d;
+				indent(sb, d + 1);
+				sb.append("for ").append(var).append(" := 0; ")
+					.append(var).append(" < ").append(LOOP_BOUND).append("; ")
+					.append(var).append("++ {\n");
+			}
+
+			indent(sb, LOOP_DEPTH + 1);
+			sb.append("sum += i").append(g).append("_0 * i").append(g).append("_")
+				.append(LOOP_DEPTH - 1).append(" + ").append(g % 10).append('\n');
+
+			for (int d = LOOP_DEPTH - 1; d >= 0; d--) {
+				indent(sb, d + 1);
+				sb.append("}\n");
+			}
+		}
+		sb.append("\tfmt.Println(sum)\n");
+		sb.append("}\n");
+	}
+
+	private static void functions(StringBuilder sb, int size) {
+		for (int k = 0; k < size; k++) {
+			sb.append("func f").append(k).append("(a int, b float32) int {\n");
+			sb.append("\tvar t int = a * ").append(k % 13 + 1).append('\n');
+			sb.append("\tif b > 1.0 {\n");
+			sb.append("\t\tt += 1\n");
+			sb.append("\t}\n");
+			sb.append("\treturn t + ").append(k).append('\n');
+			sb.append("}\n\n");
+		}
+
+		sb.append("func main() {\n");
+		sb.append("\tvar acc int = 0\n");
+		for (int k = 0; k < size; k++) {
+			sb.append("\tacc = f").append(k).append("(acc % 97, 1.5)\n");
+		}
+		sb.append("\tfmt.Println(acc)\n");
+		sb.append("}\n");
+	}
+
+	// An int and a float chain of 'size' terms each, mixing precedences
+	private static void expressions(StringBuilder sb, int size) {
+		String[] intOps = { " + ", " * ", " - ", " % " };
+		String[] floatOps = { " + ", " * ", " - ", " / " };
+
+		sb.append("func main() {\n");
+		sb.append("\tvar a int = 3\n");
+		sb.append("\tvar b int = 5\n");
+		sb.append("\tvar x float32 = 1.5\n");
+
+		sb.append("\tvar r int = a");
+		for (int t = 1; t < size; t++) {
+			String op = intOps[t % intOps.length];
+			sb.append(op);
+			// Only constants on the right of '%', so there is never a division by zero
+			if (op.equals(" % ")) {
+				sb.append(t % 7 + 2);
+			} else {
+				sb.append(t % 2 == 0 ? "a" : "b");
+			}
+		}
+		sb.append('\n');
+
+		sb.append("\tvar y float32 = x");
+		for (int t = 1; t < size; t++) {
+			String op = floatOps[t % floatOps.length];
+			sb.append(op);
+			sb.append(op.equals(" / ") ? "2.0" : "x");
+		}
+		sb.append('\n');
+
+		sb.append("\tfmt.Println(r, y)\n");
+		sb.append("}\n");
+	}
+
+	// 'size' functions with VARS_PER_FUNCTION locals each, reusing the same
+	// names in every function, and main calling all of them
+	private static void declarations(StringBuilder sb, int size) {
+		for (int k = 0; k < size; k++) {
+			sb.append("func g").append(k).append("(a int) int {\n");
+			sb.append("\tvar v0 int = a + ").append(k % 7).append('\n');
+			for (int v = 1; v < VARS_PER_FUNCTION; v++) {
+				sb.append("\tvar v").append(v).append(" int = v").append(v - 1).append(" * 2\n");
+			}
+			sb.append("\treturn v").append(VARS_PER_FUNCTION - 1).append(" % 101\n");
+			sb.append("}\n\n");
+		}
+
+		sb.append("func main() {\n");
+		sb.append("\tvar acc int = 0\n");
+		for (int k = 0; k < size; k++) {
+			sb.append("\tacc = g").append(k).append("(acc)\n");
+		}
+		sb.append("\tfmt.Println(acc)\n");
+		sb.append("}\n");
+	}
+
+	private static void indent(StringBuilder sb, int level) {
+		for (int i = 0; i < level; i++) sb.append('\t');
+	}
+
+}
@@ -0,0 +1,176 @@
+package bench;
+
+import java.util.Stack;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import code.DataStack;
+import code.Memory;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Compares the raw int slot representation used by DataStack and Memory with
+ * the old byte[] backed Word, which is kept here as a private copy.
+ * Each operation mimics what the Interpreter does for 'x = x + y' statements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordBenchmark {
+
+	@Param({ "64", "1024" })
+	public int vars;
+
+	private DataStack stack;
+	private Memory memory;
+
+	private LegacyStack legacyStack;
+	private LegacyMemory legacyMemory;
+
+	@Setup
+	public void setup() {
+		VarTable vt = new VarTable();
+		int main = vt.getSymbols().intern("main");
+		for (int i = 0; i < vars; i++) {
+			vt.addVar(vt.getSymbols().intern("v" + i), main, i, Type.INT_TYPE, 0);
+		}
+
+		stack = new DataStack(2);
+		memory = Memory.onHeap(vt);
+
+		legacyStack = new LegacyStack();
+		legacyMemory = new LegacyMemory(vars);
+	}
+
+	@Benchmark
+	public int intSlots() {
+		for (int addr = 0; addr < vars; addr++) {
+			stack.pushInt(memory.loadInt(addr));
+			stack.pushInt(addr);
+			int r = stack.popInt();
+			int l = stack.popInt();
+			stack.pushInt(l + r);
+			memory.storeInt(addr, stack.popInt());
+		}
+		return memory.loadInt(vars - 1);
+	}
+
+	@Benchmark
+	public float floatSlots() {
+		for (int addr = 0; addr < vars; addr++) {
+			stack.pushFloat(memory.loadFloat(addr));
+			stack.pushFloat(0.5f);
+			float r = stack.popFloat();
+			float l = stack.popFloat();
+			stack.pushFloat(l + r);
+			memory.storeFloat(addr, stack.popFloat());
+		}
+		return memory.loadFloat(vars - 1);
+	}
+
+	@Benchmark
+	public int intLegacyWords() {
+		for (int addr = 0; addr < vars; addr++) {
+			legacyStack.pushInt(legacyMemory.loadInt(addr));
+			legacyStack.pushInt(addr);
+			int r = legacyStack.popInt();
+			int l = legacyStack.popInt();
+			legacyStack.pushInt(l + r);
+			legacyMemory.storeInt(addr, legacyStack.popInt());
+		}
+		return legacyMemory.loadInt(vars - 1);
+	}
+
+	@Benchmark
+	public float floatLegacyWords() {
+		for (int addr = 0; addr < vars; addr++) {
+			legacyStack.pushFloat(legacyMemory.loadFloat(addr));
+			legacyStack.pushFloat(0.5f);
+			float r = legacyStack.popFloat();
+			float l = legacyStack.popFloat();
+			legacyStack.pushFloat(l + r);
+			legacyMemory.storeFloat(addr, legacyStack.popFloat());
+		}
+		return legacyMemory.loadFloat(vars - 1);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Copy of the previous byte[] based representation
+	 *------------------------------------------------------------------------------*/
+
+	private static final class LegacyWord {
+		private byte[] bytes;
+
+		static LegacyWord fromInt(int value) {
+			LegacyWord word = new LegacyWord();
+			word.bytes = new byte[] {
+							(byte)(value >>> 24),
+							(byte)(value >>> 16),
+							(byte)(value >>> 8 ),
+							(byte)(value >>> 0 )
+						 };
+			return word;
+		}
+
+		static LegacyWord fromFloat(float value) {
+			return fromInt(Float.floatToIntBits(value));
+		}
+
+		int toInt() {
+			return ((bytes[0] & 0xFF) << 24) |
+				   ((bytes[1] & 0xFF) << 16) |
+				   ((bytes[2] & 0xFF) << 8 ) |
+				   ((bytes[3] & 0xFF) << 0 );
+		}
+
+		float toFloat() {
+			return Float.intBitsToFloat(toInt());
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class LegacyStack extends Stack<LegacyWord> {
+		void pushInt(int value)		{ push(LegacyWord.fromInt(value)); }
+		int popInt()				{ return pop().toInt(); }
+		void pushFloat(float value)	{ push(LegacyWord.fromFloat(value)); }
+		float popFloat()			{ return pop().toFloat(); }
+	}
+
+	@SuppressWarnings("serial")
+	private static final class LegacyMemory extends Vector<LegacyWord> {
+		private final int memSize;
+
+		LegacyMemory(int memSize) {
+			this.memSize = memSize;
+			for (int i = 0; i < memSize; i++) {
+				add(LegacyWord.fromInt(0));
+			}
+		}
+
+		private void checkAddress(int addr) {
+			if (addr < 0 || addr >= memSize) throw new Error("Memory address not valid! Aborting");
+		}
+
+		void storeInt(int addr, int value)		{ checkAddress(addr); set(addr, LegacyWord.fromInt(value)); }
+		int loadInt(int addr)					{ checkAddress(addr); return get(addr).toInt(); }
+		void storeFloat(int addr, float value)	{ checkAddress(addr); set(addr, LegacyWord.fromFloat(value)); }
+		float loadFloat(int addr)				{ checkAddress(addr); return get(addr).toFloat(); }
+	}
+
+}
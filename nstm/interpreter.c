@@ -157,6 +157,55 @@ void parse_line(char *line) {
     }
 }
 
+// ----------------------------------------------------------------------------
+// Read binary program --------------------------------------------------------
+
+// Layout written by code.BytecodeWriter, all fields are little-endian ints:
+// header "NSTM" | version | instr count | str count, then one 16 byte record
+// (op, o1, o2, o3) per instruction, then each string as length | bytes.
+#define BIN_MAGIC   "NSTM"
+#define BIN_VERSION 1
+#define BIN_ERR     "Invalid NSTM binary!"
+
+int read_int32() {
+    unsigned char b[4];
+    if (fread(b, 1, 4, stdin) != 4) parse_error("<binary>", BIN_ERR);
+    return (int) ((unsigned) b[0] | ((unsigned) b[1] << 8) |
+                  ((unsigned) b[2] << 16) | ((unsigned) b[3] << 24));
+}
+
+void read_binary_program() {
+    char magic[4];
+    if (fread(magic, 1, 4, stdin) != 4 || memcmp(magic, BIN_MAGIC, 4) != 0) {
+        parse_error("<binary>", BIN_ERR);
+    }
+    if (read_int32() != BIN_VERSION) parse_error("<binary>", "Unsupported NSTM binary version!");
+
+    int instr_count = read_int32();
+    int str_count = read_int32();
+    if (instr_count < 0 || instr_count > INSTR_MEM_SIZE || str_count < 0) {
+        parse_error("<binary>", BIN_ERR);
+    }
+
+    for (next_instr = 0; next_instr < instr_count; next_instr++) {
+        int op = read_int32();
+        if (op < HALT || op > CALL) parse_error("<binary>", OP_ERR);
+        instr_mem[next_instr].op = (OpCode) op;
+        instr_mem[next_instr].o1 = read_int32();
+        instr_mem[next_instr].o2 = read_int32();
+        instr_mem[next_instr].o3 = read_int32();
+    }
+
+    for (int i = 0; i < str_count; i++) {
+        int len = read_int32();
+        if (len < 0 || len >= MAX_STR_SIZE) parse_error("<binary>", "String too long in NSTM binary!");
+        clear_str_buf();
+        if (fread(str_buf, 1, (size_t) len, stdin) != (size_t) len) parse_error("<binary>", BIN_ERR);
+        str_buf[len] = '\0';
+        add_string(st, str_buf);
+    }
+}
+
 void get_instruction_string(Instr instr, char *s) {
     OpCode op = instr.op;
     s += sprintf(s, "%s", OpStr[op]);
@@ -654,10 +703,14 @@ void run() {
 
 // #define DEBUG
 
-int main(void) {
+int main(int argc, char *argv[]) {
     init_memory();
     st = create_str_table();
-    read_program(); // From STDIN
+    if (argc > 1 && strcmp(argv[1], "-b") == 0) {
+        read_binary_program(); // From STDIN, as written by the compiler's -b flag
+    } else {
+        read_program(); // From STDIN
+    }
     #ifdef DEBUG
         dump_program();
     #endif
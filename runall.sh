@@ -13,6 +13,12 @@ CLASS_PATH_OPTION="-cp .:$ANTLR_PATH"
 # code generation flag because the interpreter flag will stop execution in some files for input
 flag=-c
 
+# With --client, the files are sent to a running compile server (make server)
+MAIN=Main
+if [ "$1" = "--client" ]; then
+    MAIN=driver.CompileClient
+fi
+
 rm -rf $OUT
 mkdir -p $OUT
 for infile in `ls $IN/*.go`; do
@@ -20,5 +26,5 @@ for infile in `ls $IN/*.go`; do
     outfile=$OUT/${base/.go/.nstm}
     echo
     echo Compiling $base
-    java $CLASS_PATH_OPTION:$BIN_PATH Main $infile $flag > $outfile 
+    java $CLASS_PATH_OPTION:$BIN_PATH $MAIN $infile $flag > $outfile 
 done
\ No newline at end of file
@@ -1,44 +1,37 @@
-
-
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.nio.file.Paths;
 
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
-
-import checker.SemanticChecker;
-import code.CodeGen;
-import code.Interpreter;
-import parser.GoLexer;
-import parser.GoParser;
+import code.InputSource;
+import driver.Batch;
+import driver.CompileServer;
+import driver.Driver;
 
 public class Main {
-	public static void main(String[] args) throws IOException {
-		CharStream input = CharStreams.fromFileName(args[0]);
-		String flag = args[1];
-
-		GoLexer lexer = new GoLexer(input);
-
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-		GoParser parser = new GoParser(tokens);
-
-		ParseTree tree = parser.program();
-
-		if (parser.getNumberOfSyntaxErrors() != 0) {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		// Keeps this JVM running to serve the driver.CompileClient
+		if (args.length > 0 && args[0].equals("--server")) {
+			Path info = args.length > 1 ? Paths.get(args[1]) : CompileServer.DEFAULT_INFO;
+			new CompileServer(info).serve();
 			return;
 		}
 
-		SemanticChecker checker = new SemanticChecker();
-		checker.visit(tree);
+		// Compiles many files at once, one thread per core
+		if (args.length > 0 && args[0].equals("--batch")) {
+			int status = Batch.run(Arrays.copyOfRange(args, 1, args.length), System.err);
+			if (status != 0) {
+				System.exit(status);
+			}
+			return;
+		}
 
-		if(flag.equals("-i")){
-			Interpreter interpreter = new Interpreter(checker.st, checker.vt, checker.ft);
-			interpreter.execute(checker.root);
-		} else {
-			CodeGen codeGen = new CodeGen(checker.st, checker.vt);
-			codeGen.execute(checker.root);
+		int status;
+		try (InputSource in = InputSource.stdin()) {
+			status = Driver.run(args, in, System.out, System.err);
+		}
+		if (status != 0) {
+			System.exit(status);
 		}
 	}
 
@@ -46,6 +46,20 @@ public class AST {
 		return null;
 	}
 
+	// Replace child at given index
+	public void setChild(int idx, AST child) {
+		this.children.set(idx, child);
+	}
+
+	// Copy of the node and of all the nodes below it
+	public AST copy() {
+		AST node = new AST(this.kind, this.intData, this.floatData, this.type);
+		for (AST child : this.children) {
+			node.addChild(child.copy());
+		}
+		return node;
+	}
+
 	// Get the node children
 	public List<AST> getChildren() {
 		return this.children;
@@ -71,50 +85,55 @@ public class AST {
 
 	// --------------------------------- Testing -------------------------------
 	
-	private static int nr;
-	private static VarTable vt;
-
-	private int printNodeDot() {
-		int myNr = nr++;
+	// Numbers the nodes as they are printed, the state of one printDot call
+	private static final class DotPrinter {
+		private final VarTable vt;
+		private int nr;
 
-	    System.err.printf("node%d[label=\"", myNr);
-	    if (this.type != NO_TYPE) {
-	    	System.err.printf("(%s) ", this.type.toString());
-	    }
-	    if (this.kind == NodeKind.VAR_DECL_NODE 
-			|| this.kind == NodeKind.VAR_USE_NODE 
-			) {
-			if(vt.getArgSize(this.intData) > 0) {
-				System.err.printf("[%d] ", vt.getArgSize(this.intData));
-			}
-	    	System.err.printf("%s@", vt.getName(this.intData));
-	    } else {
-			System.err.printf("%s", this.kind.toString());
-	    }
-	    if (NodeKind.hasData(this.kind)) {
-	        if (this.kind == NodeKind.FLOAT32_VAL_NODE) {
-	        	System.err.printf("%.2f", this.floatData);
-	        } else if (this.kind == NodeKind.STRING_VAL_NODE) {
-	        	System.err.printf("@%d", this.intData);
-	        } else {
-	        	System.err.printf("%d", this.intData);
-	        }
-	    }
-	    System.err.printf("\"];\n");
+		DotPrinter(VarTable vt) {
+			this.vt = vt;
+		}
 
-	    for (int i = 0; i < this.children.size(); i++) {
-			int childNr = this.children.get(i).printNodeDot();
-			System.err.printf("node%d -> node%d;\n", myNr, childNr);
-			
-	    }
-	    return myNr;
+		int print(AST node) {
+			int myNr = nr++;
+
+		    System.err.printf("node%d[label=\"", myNr);
+		    if (node.type != NO_TYPE) {
+		    	System.err.printf("(%s) ", node.type.toString());
+		    }
+		    if (node.kind == NodeKind.VAR_DECL_NODE 
+				|| node.kind == NodeKind.VAR_USE_NODE 
+				) {
+				if(vt.getArgSize(node.intData) > 0) {
+					System.err.printf("[%d] ", vt.getArgSize(node.intData));
+				}
+		    	System.err.printf("%s@", vt.getName(node.intData));
+		    } else {
+				System.err.printf("%s", node.kind.toString());
+		    }
+		    if (NodeKind.hasData(node.kind)) {
+		        if (node.kind == NodeKind.FLOAT32_VAL_NODE) {
+		        	System.err.printf("%.2f", node.floatData);
+		        } else if (node.kind == NodeKind.STRING_VAL_NODE) {
+		        	System.err.printf("@%d", node.intData);
+		        } else {
+		        	System.err.printf("%d", node.intData);
+		        }
+		    }
+		    System.err.printf("\"];\n");
+
+		    for (int i = 0; i < node.children.size(); i++) {
+				int childNr = print(node.children.get(i));
+				System.err.printf("node%d -> node%d;\n", myNr, childNr);
+				
+		    }
+		    return myNr;
+		}
 	}
 
 	public static void printDot(AST tree, VarTable table) {
-	    nr = 0;
-	    vt = table;
 	    System.err.printf("digraph {\ngraph [ordering=\"out\"];\n");
-	    tree.printNodeDot();
+	    new DotPrinter(table).print(tree);
 	    System.err.printf("}\n");
 	}
 }
@@ -53,9 +53,7 @@ public abstract class ASTBaseVisitor<T> {
 			case VAR_USE_NODE:				return visitVarUse(node);
 
 	        default:
-	            System.err.printf("Invalid kind: %s!\n", node.kind.toString());
-	            System.exit(1);
-	            return null;
+	            throw new Error("Invalid kind: " + node.kind + "! Aborting");
 		}
 	}
 	
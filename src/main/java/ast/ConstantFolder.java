@@ -0,0 +1,246 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tables.StrTable;
+import typing.Type;
+
+/*
+ * Simplifies the AST built by the SemanticChecker before it is run or
+ * compiled:
+ *  - operations over constants are replaced by their result, computed with
+ *    the same Java int and float operations the interpreter uses, so the
+ *    output does not change;
+ *  - int identities like x * 1, x + 0 and x * 0 are simplified;
+ *  - ifs with a constant condition are replaced by the branch taken, and
+ *    loops whose condition is false are removed.
+ * Divisions by a constant zero are kept, so they still fail when run.
+ */
+public final class ConstantFolder {
+
+	private final StrTable st;
+
+	public ConstantFolder(StrTable st) {
+		this.st = st;
+	}
+
+	public AST fold(AST node) {
+		List<AST> children = node.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			node.setChild(i, fold(children.get(i)));
+		}
+
+		switch (node.kind) {
+			case PLUS_NODE:
+			case MINUS_NODE:
+			case STAR_NODE:
+			case DIV_NODE:
+			case MOD_NODE:
+				return foldArithmetic(node);
+
+			case EQUALS_NODE:
+			case NOT_EQUALS_NODE:
+			case LESS_NODE:
+			case LESS_OR_EQUALS_NODE:
+			case GREATER_NODE:
+			case GREATER_OR_EQUALS_NODE:
+				return foldComparison(node);
+
+			case STATEMENT_SECTION_NODE:
+				pruneBranches(node);
+				return node;
+
+			default:
+				return node;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Expressions
+	 *------------------------------------------------------------------------------*/
+
+	private AST foldArithmetic(AST node) {
+		AST l = node.getChild(0);
+		AST r = node.getChild(1);
+
+		if (node.type == Type.INT_TYPE) {
+			if (isConstant(l) && isConstant(r)) {
+				int a = l.intData;
+				int b = r.intData;
+				switch (node.kind) {
+					case PLUS_NODE:		return intVal(a + b);
+					case MINUS_NODE:	return intVal(a - b);
+					case STAR_NODE:		return intVal(a * b);
+					case DIV_NODE:		if (b != 0) return intVal(a / b);	break;
+					case MOD_NODE:		if (b != 0) return intVal(a % b);	break;
+					default:			break;
+				}
+				return node;
+			}
+			return simplifyIdentity(node, l, r);
+		}
+
+		if (node.type == Type.FLOAT32_TYPE && isConstant(l) && isConstant(r)) {
+			float a = l.floatData;
+			float b = r.floatData;
+			switch (node.kind) {
+				case PLUS_NODE:		return floatVal(a + b);
+				case MINUS_NODE:	return floatVal(a - b);
+				case STAR_NODE:		return floatVal(a * b);
+				case DIV_NODE:		if (b != 0.0f) return floatVal(a / b);	break;
+				case MOD_NODE:		if (b != 0.0f) return floatVal(a % b);	break;
+				default:			break;
+			}
+		}
+
+		return node;
+	}
+
+	// Only for ints, as with floats x + 0 and x * 0 change -0.0, NaN and infinities
+	private AST simplifyIdentity(AST node, AST l, AST r) {
+		switch (node.kind) {
+			case PLUS_NODE:
+				if (isInt(l, 0)) return r;
+				if (isInt(r, 0)) return l;
+				break;
+			case MINUS_NODE:
+				if (isInt(r, 0)) return l;
+				break;
+			case STAR_NODE:
+				if (isInt(l, 1)) return r;
+				if (isInt(r, 1)) return l;
+				// The other side is dropped, so it must not call a function nor fail
+				if (isInt(l, 0) && isPure(r)) return l;
+				if (isInt(r, 0) && isPure(l)) return r;
+				break;
+			case DIV_NODE:
+				if (isInt(r, 1)) return l;
+				break;
+			default:
+				break;
+		}
+		return node;
+	}
+
+	private AST foldComparison(AST node) {
+		AST l = node.getChild(0);
+		AST r = node.getChild(1);
+		if (!isConstant(l) || !isConstant(r)) return node;
+
+		int cmp;
+		switch (l.type) {
+			case INT_TYPE:
+			case BOOL_TYPE:		cmp = Integer.compare(l.intData, r.intData);	break;
+			case STRING_TYPE:	cmp = st.compareStrings(l.intData, r.intData);	break;
+			case FLOAT32_TYPE:
+				// Float.compare orders NaN and -0.0, which the operators do not
+				float a = l.floatData;
+				float b = r.floatData;
+				switch (node.kind) {
+					case EQUALS_NODE:				return boolVal(a == b);
+					case NOT_EQUALS_NODE:			return boolVal(a != b);
+					case LESS_NODE:					return boolVal(a < b);
+					case LESS_OR_EQUALS_NODE:		return boolVal(a <= b);
+					case GREATER_NODE:				return boolVal(a > b);
+					case GREATER_OR_EQUALS_NODE:	return boolVal(a >= b);
+					default:						return node;
+				}
+			default:
+				return node;
+		}
+
+		switch (node.kind) {
+			case EQUALS_NODE:				return boolVal(cmp == 0);
+			case NOT_EQUALS_NODE:			return boolVal(cmp != 0);
+			case LESS_NODE:					return boolVal(cmp < 0);
+			case LESS_OR_EQUALS_NODE:		return boolVal(cmp <= 0);
+			case GREATER_NODE:				return boolVal(cmp > 0);
+			case GREATER_OR_EQUALS_NODE:	return boolVal(cmp >= 0);
+			default:						return node;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Statements
+	 *------------------------------------------------------------------------------*/
+
+	// Statements of a constant if are moved up into the section,
+	// the ids of the variables were already resolved by the checker
+	private void pruneBranches(AST section) {
+		List<AST> statements = new ArrayList<AST>();
+
+		for (AST stmt : section.getChildren()) {
+			AST condition = stmt.getChild(0);
+
+			if (stmt.kind == NodeKind.IF_NODE && condition.kind == NodeKind.BOOL_VAL_NODE) {
+				if (condition.intData == 1) {
+					statements.addAll(stmt.getChild(1).getChildren());
+				} else if (stmt.getChildren().size() == 3) {
+					statements.addAll(stmt.getChild(2).getChild(0).getChildren());
+				}
+			} else if (stmt.kind == NodeKind.WHILE_NODE && stmt.getChildren().size() == 2
+					&& condition.kind == NodeKind.BOOL_VAL_NODE && condition.intData == 0) {
+				// Never runs
+			} else {
+				statements.add(stmt);
+			}
+		}
+
+		section.getChildren().clear();
+		section.getChildren().addAll(statements);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Helpers
+	 *------------------------------------------------------------------------------*/
+
+	private static boolean isConstant(AST node) {
+		switch (node.kind) {
+			case INT_VAL_NODE:
+			case FLOAT32_VAL_NODE:
+			case BOOL_VAL_NODE:
+			case STRING_VAL_NODE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isInt(AST node, int value) {
+		return node.kind == NodeKind.INT_VAL_NODE && node.intData == value;
+	}
+
+	private static boolean isPure(AST node) {
+		if (node.kind == NodeKind.FUNC_CALL_NODE) return false;
+
+		// A division may fail when run, unless its divisor is a constant other than zero
+		if ((node.kind == NodeKind.DIV_NODE || node.kind == NodeKind.MOD_NODE) && !isNonZero(node.getChild(1))) {
+			return false;
+		}
+
+		for (AST child : node.getChildren()) {
+			if (!isPure(child)) return false;
+		}
+		return true;
+	}
+
+	private static boolean isNonZero(AST node) {
+		if (node.kind == NodeKind.INT_VAL_NODE) return node.intData != 0;
+		if (node.kind == NodeKind.FLOAT32_VAL_NODE) return node.floatData != 0.0f;
+		return false;
+	}
+
+	private static AST intVal(int value) {
+		return new AST(NodeKind.INT_VAL_NODE, value, Type.INT_TYPE);
+	}
+
+	private static AST floatVal(float value) {
+		return new AST(NodeKind.FLOAT32_VAL_NODE, value, Type.FLOAT32_TYPE);
+	}
+
+	private static AST boolVal(boolean value) {
+		return new AST(NodeKind.BOOL_VAL_NODE, value ? 1 : 0, Type.BOOL_TYPE);
+	}
+
+}
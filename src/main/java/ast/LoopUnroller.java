@@ -0,0 +1,296 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tables.StrTable;
+import typing.Type;
+
+/*
+ * Unrolls the for loops that run a number of times known from the AST, like
+ * 'for i := 0; i < 10; i++', where the counter starts at a constant, is
+ * compared to a constant and moves by a constant step.
+ *  - a loop running at most FULL_UNROLL_TRIPS times is replaced by a copy of
+ *    its body for each iteration, with the counter replaced by its value and
+ *    folded again;
+ *  - a longer loop runs 'factor' copies of its body per test of the
+ *    condition, and the iterations left over are unrolled after it.
+ * The loop runs before the optimized backends, so every one of them tests
+ * and jumps fewer times. Copies make the program bigger, so the nodes added
+ * are limited by a budget, and a loop that does not fit is left alone.
+ *
+ * The body must not write the counter or call functions (a recursive call
+ * could change it), otherwise the number of iterations is not known.
+ */
+public final class LoopUnroller {
+
+	public static final int DEFAULT_FACTOR = 4;
+	public static final int DEFAULT_BUDGET = 256;	// Nodes, the NSTM only has 1024 instructions
+	private static final int FULL_UNROLL_TRIPS = 16;
+
+	private final ConstantFolder folder;
+	private final int factor;
+	private int budget;
+
+	public LoopUnroller(StrTable st) {
+		this(st, DEFAULT_FACTOR, DEFAULT_BUDGET);
+	}
+
+	public LoopUnroller(StrTable st, int factor, int budget) {
+		this.folder = new ConstantFolder(st);
+		this.factor = factor;
+		this.budget = budget;
+	}
+
+	// Inner loops first, so an unrolled inner loop can be part of an outer one
+	public void unroll(AST node) {
+		for (AST child : node.getChildren()) {
+			unroll(child);
+		}
+		if (node.kind != NodeKind.STATEMENT_SECTION_NODE) return;
+
+		List<AST> statements = new ArrayList<AST>();
+		for (AST stmt : node.getChildren()) {
+			List<AST> unrolled = stmt.kind == NodeKind.FOR_NODE ? unrollFor(stmt) : null;
+			if (unrolled != null) {
+				statements.addAll(unrolled);
+			} else {
+				statements.add(stmt);
+			}
+		}
+
+		node.getChildren().clear();
+		node.getChildren().addAll(statements);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Loops
+	 *------------------------------------------------------------------------------*/
+
+	// The statements replacing the loop, or null when it is kept
+	private List<AST> unrollFor(AST loop) {
+		AST init = loop.getChild(0);
+		AST condition = loop.getChild(1);
+		AST step = loop.getChild(2);
+		AST body = loop.getChild(3);
+
+		if (init.kind != NodeKind.VAR_DECL_NODE || init.type != Type.INT_TYPE) return null;
+		AST start = init.getChild(0);
+		if (start == null || start.kind != NodeKind.INT_VAL_NODE) return null;
+
+		int var = init.intData;
+		Integer stride = stride(step, var);
+		if (stride == null || writes(body, var)) return null;
+
+		// The counter on the left: 'N > i' is 'i < N'
+		NodeKind cmp = condition.kind;
+		AST bound = condition.getChild(1);
+		if (isVar(bound, var)) {
+			cmp = swap(cmp);
+			bound = condition.getChild(0);
+		} else if (!isVar(condition.getChild(0), var)) {
+			return null;
+		}
+		if (cmp == null || bound.kind != NodeKind.INT_VAL_NODE) return null;
+
+		long trips = trips(cmp, start.intData, bound.intData, stride);
+		long last = start.intData + trips * stride;
+		if (trips < 0 || trips > Integer.MAX_VALUE || last < Integer.MIN_VALUE || last > Integer.MAX_VALUE) return null;
+
+		int cost = size(body) + size(step);
+		if (trips <= FULL_UNROLL_TRIPS && trips * cost <= budget) {
+			budget -= trips * cost;
+			return fullyUnrolled(init, body, var, start.intData, (int) trips, stride);
+		}
+
+		// The largest factor whose copies fit
+		int f = factor;
+		while (f > 1 && 2 * (f - 1) * cost > budget) f--;
+		if (f < 2 || trips < f) return null;
+
+		budget -= (f - 1 + (int) (trips % f)) * cost;
+		return partiallyUnrolled(loop, var, start.intData, (int) trips, stride, f);
+	}
+
+	// The body once for each value of the counter, which is left at its last value
+	private List<AST> fullyUnrolled(AST init, AST body, int var, int start, int trips, int stride) {
+		List<AST> statements = new ArrayList<AST>();
+		statements.add(init);
+		statements.addAll(iterations(body, var, start, trips, stride));
+		if (trips > 0) statements.add(assign(var, start + trips * stride));
+		return statements;
+	}
+
+	// 'for i := a; i < b; i++ { s }' by 2 over 5 iterations becomes
+	// 'for i := a; i < a + 4; i++ { s; i++; s }' followed by 's' with i = a + 4
+	private List<AST> partiallyUnrolled(AST loop, int var, int start, int trips, int stride, int f) {
+		AST init = loop.getChild(0);
+		AST step = loop.getChild(2);
+		AST body = loop.getChild(3);
+
+		AST section = AST.newSubtree(NodeKind.STATEMENT_SECTION_NODE, Type.NO_TYPE);
+		for (int i = 0; i < f; i++) {
+			if (i > 0) section.addChild(step.copy());
+			section.getChildren().addAll(body.copy().getChildren());
+		}
+
+		// Stops after the last group of f iterations
+		int whole = trips - trips % f;
+		int limit = start + whole * stride;
+		NodeKind cmp = stride > 0 ? NodeKind.LESS_NODE : NodeKind.GREATER_NODE;
+		AST condition = AST.newSubtree(cmp, Type.BOOL_TYPE, varUse(var), intVal(limit));
+
+		List<AST> statements = new ArrayList<AST>();
+		statements.add(AST.newSubtree(NodeKind.FOR_NODE, Type.NO_TYPE, init, condition, step, section));
+		statements.addAll(iterations(body, var, limit, trips - whole, stride));
+		if (trips > whole) statements.add(assign(var, start + trips * stride));
+		return statements;
+	}
+
+	private List<AST> iterations(AST body, int var, int start, int count, int stride) {
+		List<AST> statements = new ArrayList<AST>();
+		for (int i = 0; i < count; i++) {
+			AST copy = folder.fold(substitute(body.copy(), var, start + i * stride));
+			statements.addAll(copy.getChildren());
+		}
+		return statements;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Counters
+	 *------------------------------------------------------------------------------*/
+
+	// How much the step adds to the counter, or null for another kind of step
+	private static Integer stride(AST step, int var) {
+		if (!isVar(step.getChild(0), var)) return null;
+
+		AST value = step.getChild(1);
+		switch (step.kind) {
+			case PLUS_PLUS_NODE:	return 1;
+			case MINUS_MINUS_NODE:	return -1;
+			case PLUS_ASSIGN_NODE:
+				return value.kind == NodeKind.INT_VAL_NODE ? value.intData : null;
+			case MINUS_ASSIGN_NODE:
+				return value.kind == NodeKind.INT_VAL_NODE ? -value.intData : null;
+			case ASSIGN_NODE:
+				// i = i + c, i = c + i and i = i - c
+				if (value.kind != NodeKind.PLUS_NODE && value.kind != NodeKind.MINUS_NODE) return null;
+				AST l = value.getChild(0);
+				AST r = value.getChild(1);
+				if (value.kind == NodeKind.PLUS_NODE && isVar(r, var)) {
+					r = l;
+					l = value.getChild(1);
+				}
+				if (!isVar(l, var) || r.kind != NodeKind.INT_VAL_NODE) return null;
+				return value.kind == NodeKind.PLUS_NODE ? r.intData : -r.intData;
+			default:
+				return null;
+		}
+	}
+
+	// Iterations before 'i cmp bound' is false, or -1 when it never is
+	private static long trips(NodeKind cmp, long start, long bound, long stride) {
+		if (!holds(cmp, start, bound)) return 0;
+		if (stride == 0) return -1;
+
+		switch (cmp) {
+			case LESS_NODE:					return stride > 0 ? (bound - start + stride - 1) / stride : -1;
+			case LESS_OR_EQUALS_NODE:		return stride > 0 ? (bound - start) / stride + 1 : -1;
+			case GREATER_NODE:				return stride < 0 ? (start - bound - stride - 1) / -stride : -1;
+			case GREATER_OR_EQUALS_NODE:	return stride < 0 ? (start - bound) / -stride + 1 : -1;
+			case EQUALS_NODE:				return 1;
+			case NOT_EQUALS_NODE:
+				long distance = bound - start;
+				return distance % stride == 0 && distance / stride > 0 ? distance / stride : -1;
+			default:						return -1;
+		}
+	}
+
+	private static boolean holds(NodeKind cmp, long a, long b) {
+		switch (cmp) {
+			case LESS_NODE:					return a < b;
+			case LESS_OR_EQUALS_NODE:		return a <= b;
+			case GREATER_NODE:				return a > b;
+			case GREATER_OR_EQUALS_NODE:	return a >= b;
+			case EQUALS_NODE:				return a == b;
+			default:						return a != b;
+		}
+	}
+
+	private static NodeKind swap(NodeKind cmp) {
+		switch (cmp) {
+			case LESS_NODE:					return NodeKind.GREATER_NODE;
+			case LESS_OR_EQUALS_NODE:		return NodeKind.GREATER_OR_EQUALS_NODE;
+			case GREATER_NODE:				return NodeKind.LESS_NODE;
+			case GREATER_OR_EQUALS_NODE:	return NodeKind.LESS_OR_EQUALS_NODE;
+			case EQUALS_NODE:
+			case NOT_EQUALS_NODE:			return cmp;
+			default:						return null;
+		}
+	}
+
+	// Whether the statements may change the variable
+	private static boolean writes(AST node, int var) {
+		switch (node.kind) {
+			case FUNC_CALL_NODE:
+				return true;
+			case VAR_DECL_NODE:
+				if (node.intData == var) return true;
+				break;
+			case ASSIGN_NODE:
+			case PLUS_ASSIGN_NODE:
+			case MINUS_ASSIGN_NODE:
+			case PLUS_PLUS_NODE:
+			case MINUS_MINUS_NODE:
+			case INPUT_NODE:
+				if (isVar(node.getChild(0), var)) return true;
+				break;
+			default:
+				break;
+		}
+		for (AST child : node.getChildren()) {
+			if (writes(child, var)) return true;
+		}
+		return false;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Helpers
+	 *------------------------------------------------------------------------------*/
+
+	// Replaces the variable by its value in the statements
+	private static AST substitute(AST node, int var, int value) {
+		if (isVar(node, var)) return intVal(value);
+
+		List<AST> children = node.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			node.setChild(i, substitute(children.get(i), var, value));
+		}
+		return node;
+	}
+
+	private static boolean isVar(AST node, int var) {
+		return node != null && node.kind == NodeKind.VAR_USE_NODE && node.intData == var;
+	}
+
+	private static int size(AST node) {
+		int n = 1;
+		for (AST child : node.getChildren()) {
+			n += size(child);
+		}
+		return n;
+	}
+
+	private static AST assign(int var, int value) {
+		return AST.newSubtree(NodeKind.ASSIGN_NODE, Type.NO_TYPE, varUse(var), intVal(value));
+	}
+
+	private static AST varUse(int var) {
+		return new AST(NodeKind.VAR_USE_NODE, var, Type.INT_TYPE);
+	}
+
+	private static AST intVal(int value) {
+		return new AST(NodeKind.INT_VAL_NODE, value, Type.INT_TYPE);
+	}
+
+}
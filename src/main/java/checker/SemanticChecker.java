@@ -8,18 +8,20 @@ import parser.GoParser;
 import parser.GoParserBaseVisitor;
 import tables.FuncTable;
 import tables.StrTable;
+import tables.Symbols;
 import tables.VarTable;
 import typing.Type;
 
 public class SemanticChecker extends GoParserBaseVisitor<AST> {
 
 	public final StrTable st = new StrTable();
-	public final VarTable vt = new VarTable();
-	public final FuncTable ft = new FuncTable();
+	public final Symbols symbols = new Symbols();	// Names of the variables and functions
+	public final VarTable vt = new VarTable(symbols);
+	public final FuncTable ft = new FuncTable(symbols);
 
 	Type lastDeclType; // Global variable with the last declared var type 
 	Type lastDeclFuncType; // Global variable with the last declared func type 
-	String lastDeclFuncName; // Global variable with the last declared func name 
+	int lastDeclFuncScope; // Global variable with the symbol of the last declared func name
 	int lastDeclFuncArgsSize; // Global variable with the last declared FUNC argsSize 
 	int lastDeclArrayArgsSize; // Global variable with the last declared ARRAY argsSize 
 	int lastExpressionListSize;
@@ -40,6 +42,11 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
     	AST.printDot(root, vt);
     }
 
+	// Stops the checking, the caller shows the message
+	private static void error(String format, Object... args) {
+		throw new SemanticException(String.format(format, args));
+	}
+
 	/*------------------------------------------------------------------------------*
 	 *	Var checking and declaration.
 	 *------------------------------------------------------------------------------*/
@@ -48,10 +55,9 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	AST checkVar(Token token) {
 		String text = token.getText();
 		int line = token.getLine();
-		int idx = vt.lookupVar(text, lastDeclFuncName);
+		int idx = vt.lookupVar(symbols.intern(text), lastDeclFuncScope);
 		if (idx == -1) {
-			System.out.printf("SEMANTIC ERROR (%d): variable '%s' was not declared.\n", line, text);
-			System.exit(1);
+			error("SEMANTIC ERROR (%d): variable '%s' was not declared.\n", line, text);
 		}
 		return new AST(NodeKind.VAR_USE_NODE, idx, vt.getType(idx));
 	}
@@ -60,14 +66,14 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	AST newVar(Token token) {
 		String text = token.getText();
 		int line = token.getLine();
-		int idx = vt.lookupVar(text, lastDeclFuncName);
+		int name = symbols.intern(text);
+		int idx = vt.lookupVar(name, lastDeclFuncScope);
 		if (idx != -1) {
-			System.out.printf("SEMANTIC ERROR (%d): variable '%s' already declared at line %d.\n",
+			error("SEMANTIC ERROR (%d): variable '%s' already declared at line %d.\n",
 				line, text, vt.getLine(idx)
 			);
-			System.exit(1);
 		}
-		idx = vt.addVar(text, lastDeclFuncName, line, lastDeclType, lastDeclArrayArgsSize);
+		idx = vt.addVar(name, lastDeclFuncScope, line, lastDeclType, lastDeclArrayArgsSize);
 		return new AST(NodeKind.VAR_DECL_NODE, idx, lastDeclType);
 	}
 
@@ -79,10 +85,9 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	AST checkFunc(Token token) {
 		String text = token.getText();
 		int line = token.getLine();
-		int idx = ft.lookupFunc(text);
+		int idx = ft.lookupFunc(symbols.intern(text));
 		if (idx == -1) {
-			System.out.printf("SEMANTIC ERROR (%d): function '%s' was not declared.\n", line, text);
-			System.exit(1);
+			error("SEMANTIC ERROR (%d): function '%s' was not declared.\n", line, text);
 		}
 		return new AST(NodeKind.FUNC_CALL_NODE, idx, ft.getType(idx));
 	}
@@ -91,14 +96,14 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	AST newFunc(Token token) {
 		String text = token.getText();
 		int line = token.getLine();
-		int idx = ft.lookupFunc(text);
+		int name = symbols.intern(text);
+		int idx = ft.lookupFunc(name);
 		if (idx != -1) {
-			System.out.printf("SEMANTIC ERROR (%d): function '%s' already declared at line %d.\n",
+			error("SEMANTIC ERROR (%d): function '%s' already declared at line %d.\n",
 				line, text, ft.getLine(idx)
 			);
-			System.exit(1);
 		}
-		idx = ft.addFunc(text, line, lastDeclFuncType, lastDeclFuncArgsSize);
+		idx = ft.addFunc(name, line, lastDeclFuncType, lastDeclFuncArgsSize);
 		return new AST(NodeKind.FUNC_DECL_NODE, idx, lastDeclFuncType);
 	}
 
@@ -107,17 +112,16 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	void checkFuncCall(Token token) {
 		String text = token.getText();
 		int line = token.getLine();
-		int idx = ft.lookupFunc(token.getText());
+		int idx = ft.lookupFunc(symbols.intern(text));
 
 		// Doesnt show 'function not declared' error
 		if(idx != -1) {
 			int argsSize = ft.getArgsSize(idx);
 	
 			if(argsSize != lastExpressionListSize) {
-				System.out.printf("SEMANTIC ERROR (%d): function '%s' expected %d arguments but received '%d'.\n",
+				error("SEMANTIC ERROR (%d): function '%s' expected %d arguments but received '%d'.\n",
 					line, text, argsSize, lastExpressionListSize
 				);
-				System.exit(1);
 			}
 		}
 	}
@@ -125,11 +129,10 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	// Checks if a return statement has a compatible type with the function
 	void checkFuncReturnType(int lineNo, Type t) {
 		if(t != lastDeclFuncType) {
-			System.out.printf(
+			error(
 				"SEMANTIC ERROR (%d): Return statement type incompatible with function type. Expected '%s' but received '%s'.\n",
 				lineNo, lastDeclFuncType, t
 			);
-			System.exit(1);
 		}
 	}
 
@@ -138,74 +141,66 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	 *------------------------------------------------------------------------------*/
 	
     private void typeError(int lineNo, String op, Type t1, Type t2) {
-    	System.out.printf(
+    	error(
 			"SEMANTIC ERROR (%d): incompatible types for operator '%s', LHS is '%s' and RHS is '%s'.\n",
 			lineNo, op, t1.toString(), t2.toString()
 		);
-		System.exit(1);
     }
 
 	private void checkUnaryOp(int lineNo, String op, Type t) {
 		if (t != Type.INT_TYPE && t != Type.FLOAT32_TYPE) {
-			System.out.printf(
+			error(
 				"SEMANTIC ERROR (%d): type '%s' not suported for unary operator '%s'.\n",
 				lineNo, t.toString(), op
 			);
-			System.exit(1);
 		}
 	}
 
 	private void checkAssign(int lineNo, String op,Type l, Type r) {
         if (l != r) {
 			typeError(lineNo, op, l, r);
-			System.exit(1);
 		} 
     }
 
 	private void checkBoolExpr(int lineNo, String cmd, Type t) {
 		if (t != Type.BOOL_TYPE) {
-			System.out.printf(
+			error(
 				"SEMANTIC ERROR (%d): conditional expression in '%s' is '%s' instead of '%s'.\n",
 				lineNo, cmd, t.toString(), Type.BOOL_TYPE.toString()
 			);
-			System.exit(1);
 		}
 	}
 
 	private void checkIndex(int lineNo, Type t) {
 		if(t != Type.INT_TYPE) {
-			System.out.printf(
+			error(
 				"SEMANTIC ERROR (%d): incompatible type '%s' at array index.\n",
 				lineNo, t.toString()
 			);
-			System.exit(1);
 		}
     }
 
 	// ----- Specific for when declaring variables
 
 	private void typeInitError(int lineNo, String varName, Type t1, Type t2) {
-    	System.out.printf(
+    	error(
 			"SEMANTIC ERROR (%d): incompatible types when declaring variable '%s', var type is '%s' and expression type is '%s'.\n",
 			lineNo, varName, t1.toString(), t2.toString()
 		);
-		System.exit(1);
     }
 
 	private void checkInitAssign(int lineNo, String varName, Type l, Type r) {
         if (l != r ) {
 			typeInitError(lineNo, varName, l, r);
-			System.exit(1);
 		}
     }
     
 	private void checkArrayInit(int lineNo, String varName) {
 		if(lastDeclArrayArgsSize != lastExpressionListSize) {
-			System.out.printf(
+			error(
 				"SEMANTIC ERROR (%d): Array '%s' declared with size %d but initialized with %d arguments.\n",
 				lineNo, varName, lastDeclArrayArgsSize, lastExpressionListSize
 			);
-			System.exit(1);
 		}
 	}
 
@@ -408,8 +403,8 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 		// by the args declaration
 		lastDeclFuncType = lastDeclType;
 
-		// Defines the lastDeclFuncName for future var scope checking
-		lastDeclFuncName = identifierToken.getText();
+		// Defines the lastDeclFuncScope for future var scope checking
+		lastDeclFuncScope = symbols.intern(identifierToken.getText());
 
 		AST funcArgs = null;
 		if(ctx.func_args() != null) {
@@ -430,6 +425,9 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 		node.addChild(funcArgs);
 		node.addChild(statements);
 
+		// Saves how deep the interpreter stack gets inside the function
+		ft.setStackDepth(node.intData, StackDepth.of(statements));
+
 		return node;
 	}
 
@@ -481,8 +479,8 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 	// Visits the rule func_main: FUNC MAIN L_PAREN R_PAREN statement_section
 	@Override
 	public AST visitFunc_main(GoParser.Func_mainContext ctx) {
-		// Defines the lastDeclFuncName for future var scope checking
-		lastDeclFuncName = "main";
+		// Defines the lastDeclFuncScope for future var scope checking
+		lastDeclFuncScope = symbols.intern("main");
 		lastDeclFuncType = Type.NO_TYPE;
 
 		// Recursively visits rule for error checking
@@ -491,7 +489,7 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 		Token mainToken = ctx.MAIN().getSymbol();
 
 		// Adds the main function into the functions table
-		int idx = ft.addFunc(mainToken.getText(), mainToken.getLine(), lastDeclFuncType, lastDeclFuncArgsSize);		 
+		int idx = ft.addFunc(symbols.intern(mainToken.getText()), mainToken.getLine(), lastDeclFuncType, lastDeclFuncArgsSize);		 
 
 		// Creates the node for the main function
 		AST mainFunc = new AST(NodeKind.FUNC_MAIN_NODE, idx, lastDeclFuncType);
@@ -499,6 +497,9 @@ public class SemanticChecker extends GoParserBaseVisitor<AST> {
 		// Adds the statements as function's child
 		mainFunc.addChild(statements);
 
+		// Saves how deep the interpreter stack gets inside the function
+		ft.setStackDepth(idx, StackDepth.of(statements));
+
 		return mainFunc;
 	}
 
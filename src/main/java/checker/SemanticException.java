@@ -0,0 +1,11 @@
+package checker;
+
+// A semantic error in the program, with the message to show for it
+@SuppressWarnings("serial")
+public final class SemanticException extends RuntimeException {
+
+	public SemanticException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,67 @@
+package checker;
+
+import ast.AST;
+import typing.Type;
+
+/*
+ * Computes how many operand stack slots the Interpreter needs to execute
+ * a subtree. Expressions leave their value on the stack, while statements
+ * always leave it as they found it, so the depth of a statement is the
+ * deepest expression it evaluates.
+ * The depth of called functions is not included, each function has its own.
+ */
+final class StackDepth {
+
+	private StackDepth() {}
+
+	static int of(AST node) {
+		if (node == null) return 0;
+
+		switch (node.kind) {
+			case BOOL_VAL_NODE:
+			case INT_VAL_NODE:
+			case FLOAT32_VAL_NODE:
+			case STRING_VAL_NODE:
+			case VAR_USE_NODE:
+			case PLUS_PLUS_NODE:
+			case MINUS_MINUS_NODE:
+				return 1;
+
+			case EQUALS_NODE:
+			case NOT_EQUALS_NODE:
+			case LESS_NODE:
+			case LESS_OR_EQUALS_NODE:
+			case GREATER_NODE:
+			case GREATER_OR_EQUALS_NODE:
+			case STAR_NODE:
+			case DIV_NODE:
+			case MOD_NODE:
+			case PLUS_NODE:
+			case MINUS_NODE:
+				// The left value stays on the stack while the right one is evaluated
+				return Math.max(of(node.getChild(0)), 1 + of(node.getChild(1)));
+
+			case FUNC_CALL_NODE:
+				// Each argument is popped into its var before the next one,
+				// then the return value is pushed
+				return Math.max(maxOfChildren(node.getChild(0)), node.type == Type.NO_TYPE ? 0 : 1);
+
+			case INPUT_NODE:
+				return 0;
+
+			default:
+				return maxOfChildren(node);
+		}
+	}
+
+	private static int maxOfChildren(AST node) {
+		if (node == null) return 0;
+
+		int depth = 0;
+		for (AST child : node.getChildren()) {
+			depth = Math.max(depth, of(child));
+		}
+		return depth;
+	}
+
+}
@@ -0,0 +1,68 @@
+package code;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import tables.StrTable;
+
+/*
+ * Writes a program in the NSTM binary format, read by the simulator with
+ * the '-b' flag. All fields are little-endian 32-bit ints.
+ *
+ * Header (16 bytes):
+ * 		magic "NSTM" | version | instruction count | string count
+ * Instructions (16 bytes each):
+ * 		opcode | o1 | o2 | o3
+ * Strings:
+ * 		byte length | UTF-8 bytes, same text as in the SSTR lines
+ *
+ * The opcode is the OpCode ordinal, which matches the OpCode enum of the
+ * simulator. Instructions come right after the header so they stay aligned.
+ */
+public final class BytecodeWriter {
+
+	public static final int MAGIC = 0x4D54534E; // "NSTM" read as a little-endian int
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 16;
+	public static final int RECORD_SIZE = 16;
+
+	private BytecodeWriter() {}
+
+	public static void write(Instruction[] program, StrTable st, OutputStream out) throws IOException {
+		byte[][] strings = new byte[st.size()][];
+		int stringsSize = 0;
+		for (int i = 0; i < st.size(); i++) {
+			strings[i] = st.get(i).getBytes(StandardCharsets.UTF_8);
+			stringsSize += Integer.BYTES + strings[i].length;
+		}
+
+		ByteBuffer buf = ByteBuffer
+			.allocate(HEADER_SIZE + program.length * RECORD_SIZE + stringsSize)
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(program.length);
+		buf.putInt(strings.length);
+
+		for (Instruction instr : program) {
+			buf.putInt(instr.op.ordinal());
+			buf.putInt(instr.o1);
+			buf.putInt(instr.o2);
+			buf.putInt(instr.o3);
+		}
+
+		for (byte[] s : strings) {
+			buf.putInt(s.length);
+			buf.put(s);
+		}
+
+		out.write(buf.array());
+		out.flush();
+	}
+
+}
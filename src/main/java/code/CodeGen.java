@@ -1,7 +1,15 @@
 package code;
 
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 import ast.AST;
 import ast.ASTBaseVisitor;
+import ir.Function;
+import ir.IRBuilder;
+import ir.Lowering;
+import ir.PassManager;
 import tables.StrTable;
 import tables.VarTable;
 import typing.Type;
@@ -13,41 +21,86 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
     private final Instruction code[]; // Code memory
 	private final StrTable st;
 	private final VarTable vt;
-
-	private static int nextInstr;
-	private static int intRegsCount;
-	private static int floatRegsCount;
+	private final Promotion promotion = new Promotion();
+	private final Peephole peephole = new Peephole();
+	private final PassManager passes;	// Goes through the IR when not null
+
+	// Each CodeGen has its own, so several can run at the same time
+	private int nextInstr;
+	private int intRegsCount;
+	private int floatRegsCount;
 	
 	public CodeGen(StrTable st, VarTable vt) {
+		this(st, vt, null);
+	}
+
+	// Generates the code from the SSA IR, optimized by the given passes
+	public CodeGen(StrTable st, VarTable vt, PassManager passes) {
 		this.code = new Instruction[INSTR_MEM_SIZE];
 		this.st = st;
 		this.vt = vt;
+		this.passes = passes;
 	}
 	
 	@Override
 	public void execute(AST root) {
-		nextInstr = 0;
-		intRegsCount = 0;
-		floatRegsCount = 0;
-	    dumpStrTable();
-	    visit(root);
-	    emit(HALT);
-	    dumpProgram();
+	    print(root, System.out);
+	}
+
+	// Prints the program as text, the way the simulator reads it
+	public void print(AST root, PrintStream out) {
+	    print(generate(root), out);
+	}
+
+	// Prints a program generated before. The text is UTF-8 whatever the
+	// platform charset, like the strings of -b.
+	public void print(Instruction[] program, PrintStream out) {
+	    PrintStream utf8 = new PrintStream(out, false, StandardCharsets.UTF_8);
+	    dumpStrTable(utf8);
+	    dumpProgram(program, utf8);
+	    utf8.flush();
+	}
+
+	// Instructions the peephole pass removed from the last program generated
+	public int removedCount() {
+	    return peephole.removedCount();
+	}
+
+	// Generates the program without printing it, so it can be run in-process
+	public Instruction[] generate(AST root) {
+	    Instruction[] program;
+	    if (passes != null) {
+	        Function main = passes.run(new IRBuilder(vt).build(root));
+	        program = new Lowering().lower(main);
+	    } else {
+	        nextInstr = 0;
+	        intRegsCount = 0;
+	        floatRegsCount = 0;
+	        visit(root);
+	        emit(HALT);
+	        // Keeps the variables in registers instead of data_mem
+	        program = promotion.promote(Arrays.copyOf(code, nextInstr));
+	    }
+
+	    // Cleans up the naive code, then maps the virtual registers to the
+	    // machine ones, spilling after the variables
+	    program = peephole.optimize(program);
+	    return new RegisterAllocator(vt.size()).allocate(program);
 	}
 
     /*------------------------------------------------------------------------------*
 	 *	Prints
 	 *------------------------------------------------------------------------------*/
 
-	void dumpProgram() {
-	    for (int addr = 0; addr < nextInstr; addr++) {
-	    	System.out.printf("%s\n", code[addr].toString());
+	void dumpProgram(Instruction[] program, PrintStream out) {
+	    for (Instruction instr : program) {
+	    	out.printf("%s\n", instr.toString());
 	    }
 	}
 
-	void dumpStrTable() {
+	void dumpStrTable(PrintStream out) {
 	    for (int i = 0; i < st.size(); i++) {
-	        System.out.printf("SSTR %s\n", st.get(i));
+	        out.printf("SSTR %s\n", st.get(i));
 	    }
 	}
 	
@@ -85,6 +138,8 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 	 *	Registers
 	 *------------------------------------------------------------------------------*/
 	
+	// Registers here are virtual, a new one for every value.
+	// The RegisterAllocator maps them to the machine registers at the end.
 	private int newIntReg() {
 		return intRegsCount++; 
 	}
@@ -177,8 +232,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 				emit(STWi, addr, x);	// store string call
 				break;
 			default:
-				System.err.printf("Invalid type: %s!\n", var.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + var.type + "! Aborting");
 		}
 
 	    return null;
@@ -204,8 +258,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 				case STRING_TYPE:  	emit(CALL, 7, x);  break;
 				case NO_TYPE:
 				default:
-					System.err.printf("Invalid type: %s!\n", expression.type.toString());
-					System.exit(1);
+					throw new Error("Invalid type: " + expression.type + "! Aborting");
 			}
 		}
 
@@ -235,8 +288,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 			case BOOL_TYPE:			emit(EQUi, x, y, z);	break;
 			case STRING_TYPE:		emit(EQUs, x, y, z);	break;
 			default:
-				System.err.printf("Invalid type: %s!\n", l.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + l.type + "! Aborting");
 		}
 
 	    return x;
@@ -261,8 +313,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 			case BOOL_TYPE:			emit(NEQi, x, y, z);	break;
 			case STRING_TYPE:		emit(NEQs, x, y, z);	break;
 			default:
-				System.err.printf("Invalid type: %s!\n", l.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + l.type + "! Aborting");
 		}
 
 	    return x;
@@ -287,8 +338,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 			case BOOL_TYPE:			emit(LTHi, x, y, z);	break;
 			case STRING_TYPE:		emit(LTHs, x, y, z);	break;
 			default:
-				System.err.printf("Invalid type: %s!\n", l.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + l.type + "! Aborting");
 		}
 
 	    return x;
@@ -313,8 +363,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 			case BOOL_TYPE:			emit(LTEi, x, y, z);	break;
 			case STRING_TYPE:		emit(LTEs, x, y, z);	break;
 			default:
-				System.err.printf("Invalid type: %s!\n", l.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + l.type + "! Aborting");
 		}
 
 	    return x;
@@ -339,8 +388,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 			case BOOL_TYPE:			emit(GTHi, x, y, z);	break;
 			case STRING_TYPE:		emit(GTHs, x, y, z);	break;
 			default:
-				System.err.printf("Invalid type: %s!\n", l.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + l.type + "! Aborting");
 		}
 
 	    return x;
@@ -365,8 +413,7 @@ public final class CodeGen extends ASTBaseVisitor<Integer> {
 			case BOOL_TYPE:			emit(GTEi, x, y, z);	break;
 			case STRING_TYPE:		emit(GTEs, x, y, z);	break;
 			default:
-				System.err.printf("Invalid type: %s!\n", l.type.toString());
-				System.exit(1);
+				throw new Error("Invalid type: " + l.type + "! Aborting");
 		}
 
 	    return x;
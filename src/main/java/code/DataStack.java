@@ -1,33 +1,56 @@
 package code;
 
+import java.util.Arrays;
+import java.util.EmptyStackException;
 import java.util.Formatter;
-import java.util.Stack;
 
-@SuppressWarnings("serial")
-public final class DataStack extends Stack<Word> {
-	
+public final class DataStack {
+
+	private int[] slots;
+	private int top;
+
+	// The max depth is computed by the semantic checker, so the stack only
+	// needs to grow when a function calls itself
+	public DataStack(int maxDepth) {
+		this.slots = new int[Math.max(maxDepth, 1)];
+		this.top = 0;
+	}
+
 	public void pushInt(int value) {
-		super.push(Word.fromInt(value));
+		if (top == slots.length) {
+			slots = Arrays.copyOf(slots, slots.length * 2);
+		}
+		slots[top++] = Word.fromInt(value);
 	}
 
 	public int popInt() {
-		return super.pop().toInt();
+		if (top == 0) throw new EmptyStackException();
+
+		return Word.toInt(slots[--top]);
 	}
 	
 	public void pushFloat(float value) {
-		super.push(Word.fromFloat(value));
+		pushInt(Word.fromFloat(value));
 	}
 
 	public float popFloat() {
-		return super.pop().toFloat();
+		return Word.toFloat(popInt());
+	}
+
+	public int size() {
+		return top;
+	}
+
+	public boolean isEmpty() {
+		return top == 0;
 	}
 
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		Formatter f = new Formatter(sb);
 		f.format("*** STACK: ");
-		for (int i = 0; i < this.size(); i++) {
-			f.format("%d ", this.get(i).toInt());
+		for (int i = 0; i < top; i++) {
+			f.format("%d ", Word.toInt(slots[i]));
 		}
 		f.format("\n");
 		f.close();
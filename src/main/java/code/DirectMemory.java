@@ -0,0 +1,30 @@
+package code;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+final class DirectMemory extends Memory {
+
+	private final IntBuffer words;
+
+	DirectMemory(int size) {
+		super(size);
+
+		// Direct buffers are zero-filled as well
+		this.words = ByteBuffer.allocateDirect(size * Integer.BYTES)
+			.order(ByteOrder.nativeOrder())
+			.asIntBuffer();
+	}
+
+	@Override
+	public void putInt(int addr, int value) {
+		words.put(addr, Word.fromInt(value));
+	}
+
+	@Override
+	public int getInt(int addr) {
+		return Word.toInt(words.get(addr));
+	}
+
+}
@@ -0,0 +1,24 @@
+package code;
+
+final class HeapMemory extends Memory {
+
+	private final int[] words;
+
+	HeapMemory(int size) {
+		super(size);
+
+		// Java zero-fills the array, so the memory starts empty
+		this.words = new int[size];
+	}
+
+	@Override
+	public void putInt(int addr, int value) {
+		words[addr] = Word.fromInt(value);
+	}
+
+	@Override
+	public int getInt(int addr) {
+		return Word.toInt(words[addr]);
+	}
+
+}
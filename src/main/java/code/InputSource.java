@@ -0,0 +1,270 @@
+package code;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/*
+ * Reader for what a running program reads, in place of java.util.Scanner.
+ * Tokens are found and parsed in a byte buffer, without regular expressions
+ * and without making a String for the numbers:
+ *  - nextInt and nextFloat read a token separated by whitespace, like the
+ *    Scanner methods, and throw the same exceptions;
+ *  - next reads a token as a String, for the strings of the NSTM;
+ *  - nextLine skips one line break and reads up to the next one, like
+ *    Scanner.next with "\n" as the delimiter, for the strings of Go.
+ *
+ * When stdin is a file, it is read through its FileChannel in large blocks.
+ * Otherwise it is read as it comes, so typing at a prompt still works.
+ */
+public final class InputSource implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Floats of at most this many digits times a power of ten up to
+	// MAX_EXACT_POW10 are exact, so one multiplication or division rounds them
+	private static final long MAX_EXACT_MANTISSA = 1L << 24;
+	private static final int MAX_EXACT_POW10 = 10;
+	private static final float[] POW10 = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+	private final ReadableByteChannel in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private boolean eof;
+
+	// The token last read is buffer[start, end)
+	private int start;
+	private int end;
+
+	public InputSource(ReadableByteChannel in) {
+		this.in = in;
+	}
+
+	public static InputSource stdin() {
+		FileChannel file = new FileInputStream(FileDescriptor.in).getChannel();
+		try {
+			// Pipes and terminals have no size
+			if (file.size() > 0) return new InputSource(file);
+		} catch (IOException e) {
+			// Not a file
+		}
+		return new InputSource(Channels.newChannel(System.in));
+	}
+
+	@Override
+	public void close() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Values
+	 *------------------------------------------------------------------------------*/
+
+	public int nextInt() {
+		token();
+		int i = start;
+		boolean negative = buffer[i] == '-';
+		if (negative || buffer[i] == '+') i++;
+		if (i == end) throw mismatch();
+
+		// Accumulates negatively, so Integer.MIN_VALUE fits
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) throw mismatch();
+			if (value < (Integer.MIN_VALUE + digit) / 10) throw mismatch();
+			value = value * 10 - digit;
+		}
+		if (!negative) {
+			if (value == Integer.MIN_VALUE) throw mismatch();
+			value = -value;
+		}
+		return value;
+	}
+
+	// '[+-]digits[.digits][e[+-]digits]' with few digits and a small exponent is
+	// computed here, anything else (NaN, Infinity, hex, long fractions) goes
+	// through Float.parseFloat
+	public float nextFloat() {
+		token();
+		int i = start;
+		boolean negative = buffer[i] == '-';
+		if (negative || buffer[i] == '+') i++;
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean exact = true;
+		boolean point = false;
+		for (; i < end; i++) {
+			byte c = buffer[i];
+			if (c == '.' && !point) {
+				point = true;
+			} else if (c >= '0' && c <= '9') {
+				digits++;
+				if (mantissa < MAX_EXACT_MANTISSA * 10) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (point) exponent--;
+				} else {
+					exact = false;
+				}
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) return parseFloat();
+
+		if (i < end) {
+			if (buffer[i] != 'e' && buffer[i] != 'E') return parseFloat();
+			i++;
+			boolean negativeExp = i < end && buffer[i] == '-';
+			if (i < end && (negativeExp || buffer[i] == '+')) i++;
+			if (i == end) throw mismatch();
+
+			int exp = 0;
+			for (; i < end; i++) {
+				int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9) throw mismatch();
+				if (exp < 1000) exp = exp * 10 + digit;
+			}
+			exponent += negativeExp ? -exp : exp;
+		}
+
+		if (!exact || mantissa > MAX_EXACT_MANTISSA || Math.abs(exponent) > MAX_EXACT_POW10) return parseFloat();
+
+		float value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+		return negative ? -value : value;
+	}
+
+	private float parseFloat() {
+		try {
+			return Float.parseFloat(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException e) {
+			throw mismatch();
+		}
+	}
+
+	private static InputMismatchException mismatch() {
+		return new InputMismatchException();
+	}
+
+	public String next() {
+		token();
+		return text();
+	}
+
+	public String nextLine() {
+		if (pos == limit && !fill()) throw new NoSuchElementException();
+		if (buffer[pos] == '\n') {
+			pos++;
+			if (pos == limit && !fill()) throw new NoSuchElementException();
+		}
+
+		int i = pos;
+		while (true) {
+			if (i == limit) {
+				i -= pos;
+				if (!fill()) {
+					i += pos;
+					break;
+				}
+				i += pos;
+				continue;
+			}
+			if (buffer[i] == '\n') break;
+			i++;
+		}
+
+		start = pos;
+		end = i;
+		pos = i;
+		return text();
+	}
+
+	private String text() {
+		return new String(buffer, start, end - start, Charset.defaultCharset());
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Buffer
+	 *------------------------------------------------------------------------------*/
+
+	// Skips the whitespace and marks the token after it
+	private void token() {
+		while (true) {
+			if (pos == limit && !fill()) throw new NoSuchElementException();
+			if (!isWhitespace(buffer[pos])) break;
+			pos++;
+		}
+
+		int i = pos;
+		while (true) {
+			if (i == limit) {
+				i -= pos;
+				if (!fill()) {
+					i += pos;
+					break;
+				}
+				i += pos;
+				continue;
+			}
+			if (isWhitespace(buffer[i])) break;
+			i++;
+		}
+
+		start = pos;
+		end = i;
+		pos = i;
+	}
+
+	// Moves what is left from pos to the front, grows the buffer when it
+	// is all left, and reads more after it. False at the end of the input.
+	private boolean fill() {
+		if (eof) return false;
+
+		if (pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+		try {
+			int n;
+			do {
+				n = in.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+			} while (n == 0);
+
+			if (n < 0) {
+				eof = true;
+				return false;
+			}
+			limit += n;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Same as Character.isWhitespace for the ASCII bytes
+	private static boolean isWhitespace(byte c) {
+		return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F);
+	}
+
+}
@@ -2,10 +2,10 @@ package code;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 import ast.AST;
 import ast.ASTBaseVisitor;
+import ast.NodeKind;
 import tables.FuncTable;
 import tables.StrTable;
 import tables.VarTable;
@@ -20,17 +20,47 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	private final StrTable st;
 	private final VarTable vt;
 	private final FuncTable ft;
-	private final Scanner in;
+	private final InputSource in;
+	private final OutputSink out;
 	private List<FunctionRef> functionRefs;
+	private boolean returning;	// Set by a return until its call ends
 
 	public Interpreter(StrTable st, VarTable vt, FuncTable ft) {
-		this.stack = new DataStack();
-		this.memory = new Memory(vt);
-		this.st = st;
+		this(st, vt, ft, Memory.onHeap(vt));
+	}
+
+	// Every memory access made by the interpreter uses a var index taken from
+	// the VarTable by the semantic checker, and the memory has one word for
+	// each entry, so the addresses never need to be checked again
+	public Interpreter(StrTable st, VarTable vt, FuncTable ft, Memory memory) {
+		this(st, vt, ft, memory, InputSource.stdin(), new OutputSink(System.out));
+	}
+
+	// Reads and prints through the given streams instead of stdin and stdout
+	public Interpreter(StrTable st, VarTable vt, FuncTable ft, Memory memory, InputSource in, OutputSink out) {
+		if (memory.size() < vt.size()) throw new Error("Memory is smaller than the var table! Aborting");
+
+		this.stack = new DataStack(maxStackDepth(ft));
+		this.memory = memory;
 		this.vt = vt;
 		this.ft = ft;
-		this.in = new Scanner(System.in);
+		this.in = in;
+		this.out = out;
 		this.functionRefs = new ArrayList<FunctionRef>();
+
+		// Strings read at runtime are added to a copy, the compiler's table stays intact
+		this.st = new StrTable();
+		this.st.addAll(st);
+	}
+
+	// Without recursion, a call chain goes through each function at most once,
+	// so the sum of every function's depth is enough for the whole program
+	private static int maxStackDepth(FuncTable ft) {
+		int depth = 0;
+		for (int i = 0; i < ft.size(); i++) {
+			depth += ft.getStackDepth(i);
+		}
+		return depth;
 	}
 
 	// Helper method to find the function reference when the function is called
@@ -89,50 +119,52 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			case STRING_TYPE:  		readString(varIdx); 	break;
 			case NO_TYPE:
 		    default:
-	            System.err.printf("Invalid input type: %s!\n", varType.toString());
-	            System.exit(1);
+	            throw new Error("Invalid input type: " + varType + "! Aborting");
 		}
 		return null;
 	}
 
 	private Void readInt(int varIdx) {
-		System.out.printf("read (int): ");
+		prompt("read (int): ");
 		int value = in.nextInt();
-		memory.storeInt(varIdx, value);
+		memory.putInt(varIdx, value);
 		return null; 
 	}
 
 	private Void readFloat32(int varIdx) {
-		System.out.printf("read (float32): ");
+		prompt("read (float32): ");
 		float value = in.nextFloat();
-		memory.storeFloat(varIdx, value);
+		memory.putFloat(varIdx, value);
 		return null;
 	}
 
 	private Void readBool(int varIdx) {
 		int value;
 	    do {
-	        System.out.printf("read (bool - 0 = false, 1 = true): ");
+	        prompt("read (bool - 0 = false, 1 = true): ");
 	        value = in.nextInt();
 	    } while (value != 0 && value != 1);
-	    memory.storeInt(varIdx, value);
+	    memory.putInt(varIdx, value);
 	    return null;
 	}
 
 	private Void readString(int varIdx) {
-		System.out.printf("read (str): ");
+		prompt("read (str): ");
 
-		// Changes the default delimiter to read senteces with spaces
-		// then resets it
-		in.useDelimiter("\n");
-		String s = in.next();
-		in.reset();
+		// Reads a whole line, so sentences with spaces are kept together
+		String s = in.nextLine();
 
 		int strIdx = st.addString(s);
-		memory.storeInt(varIdx, strIdx);
+		memory.putInt(varIdx, strIdx);
 		return null;
 	}
 
+	// The output is flushed before reading, so the prompt shows up
+	private void prompt(String text) {
+		out.writeString(text);
+		out.flush();
+	}
+
 	/*------------------------------------------------------------------------------*
 	 *	Output
 	 *------------------------------------------------------------------------------*/
@@ -153,39 +185,33 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 				case STRING_TYPE:  	writeString();		break;
 				case NO_TYPE:
 				default:
-					System.err.printf("Invalid output type: %s!\n", expression.type.toString());
-					System.exit(1);
+					throw new Error("Invalid output type: " + expression.type + "! Aborting");
 			}
-			System.out.print(" ");
+			out.writeByte(' ');
 		}
-		System.out.println();
+		out.newLine();
 
 		return null;
 	}
 
 	private Void writeInt() {
-		System.out.print(stack.popInt());
+		out.writeInt(stack.popInt());
 		return null;
 	}
 
 	private Void writeFloat32() {
-		System.out.print(stack.popFloat());
+		out.writeFloat(stack.popFloat());
 		return null;
 	}
 
 	private Void writeBool() {
-		if (stack.popInt() == 0) {
-			System.out.print("false");
-		} else {
-			System.out.print("true");
-		}
+		out.writeBool(stack.popInt() != 0);
 		return null;
 	}
 
 	private Void writeString() {
 		int stringIdx = stack.popInt();
-		String originalString = st.get(stringIdx);
-		System.out.print(originalString.replace("\"", ""));
+		out.writeString(st.getText(stringIdx));
 		return null;
 	}
 
@@ -217,16 +243,16 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 
 		// Compares strings
 		if(t == Type.STRING_TYPE) {
-			String rString = st.get(stack.popInt());
-			String lString = st.get(stack.popInt());
+			int r = stack.popInt();
+			int l = stack.popInt();
 
 			switch (op) {
-				case "==":		result = lString.compareTo(rString) == 0;		break;
-				case "!=":		result = lString.compareTo(rString) != 0;		break;
-				case "<":		result = lString.compareTo(rString) < 0;		break;
-				case "<=":		result = lString.compareTo(rString) <= 0;		break;
-				case ">":		result = lString.compareTo(rString) > 0;		break;
-				case ">=":		result = lString.compareTo(rString) >= 0;		break;
+				case "==":		result = st.equalStrings(l, r);				break;
+				case "!=":		result = !st.equalStrings(l, r);			break;
+				case "<":		result = st.compareStrings(l, r) < 0;		break;
+				case "<=":		result = st.compareStrings(l, r) <= 0;		break;
+				case ">":		result = st.compareStrings(l, r) > 0;		break;
+				case ">=":		result = st.compareStrings(l, r) >= 0;		break;
 			}
 		}
 
@@ -447,6 +473,13 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	protected Void visitStatementSection(AST node) {
 		for (AST child : node.getChildren()) {
 			visit(child);
+
+			// A function called as a statement has its return value discarded
+			if (child.kind == NodeKind.FUNC_CALL_NODE && child.type != Type.NO_TYPE) {
+				stack.popInt();
+			}
+
+			if (returning) break;
 		}
 		return null; 
 	}
@@ -459,6 +492,9 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			visit(node.getChild(0));
 		}
 
+		// The enclosing sections and loops stop until the call ends
+		returning = true;
+
 		return null; 
 	}
 
@@ -468,7 +504,7 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 		// STRING (represented as the string index at the string table) types
 		if (t == Type.INT_TYPE || t == Type.BOOL_TYPE || t == Type.STRING_TYPE) {
 			// Load the var value from memory
-			int varValue = memory.loadInt(varIdx);
+			int varValue = memory.getInt(varIdx);
 
 			int number = stack.popInt();
 	
@@ -479,13 +515,13 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			}
 	
 			// Updates the var value in memory
-			memory.storeInt(varIdx, varValue);
+			memory.putInt(varIdx, varValue);
 		}
 
 		// Executes the assign operations for FLOAT32 type
 		if (t == Type.FLOAT32_TYPE) {
 			// Load the var value from memory
-			float varValue = memory.loadFloat(varIdx);
+			float varValue = memory.getFloat(varIdx);
 
 			float number = stack.popFloat();
 	
@@ -496,7 +532,7 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			}
 	
 			// Updates the var value in memory
-			memory.storeFloat(varIdx, varValue);
+			memory.putFloat(varIdx, varValue);
 		} 	
 	}
 
@@ -570,13 +606,11 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			}
 
 			// Updates the var value in memory
-			memory.storeInt(varIdx, number);
-
-			stack.pushInt(number);
+			memory.putInt(varIdx, number);
 		}
 
 		if (t == Type.FLOAT32_TYPE) {
-			float number = stack.popInt();
+			float number = stack.popFloat();
 
 			switch (op) {
 				case "++":  number++; 	break;
@@ -584,9 +618,7 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			}
 
 			// Updates the var value in memory
-			memory.storeFloat(varIdx, number);
-
-			stack.pushFloat(number);
+			memory.putFloat(varIdx, number);
 		}
 	}
 
@@ -655,10 +687,12 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			while (condition == 1) {
 				// Visits the statement section
 				visit(node.getChild(1));
+				if (returning) break;
 				
 				// Visits the condition again to reevaluate it
 				visit(node.getChild(0));
 				condition = stack.popInt();
+				ProgramInterruptedException.check();
 			}
 		}
 
@@ -667,6 +701,8 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			while(true) {
 				// Visits the statement section
 				visit(node.getChild(0));
+				if (returning) break;
+				ProgramInterruptedException.check();
 			}
 		}
 
@@ -685,14 +721,15 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 		while (condition == 1) {
 			// Visits the statement section
 			visit(node.getChild(3));
+			if (returning) break;
 			
 			// Visits the var increment node
 			visit(node.getChild(2));
-			stack.popInt(); // removes the incremented var value from the stack
 			
 			// Visits the condition again to reevaluate it
 			visit(node.getChild(1));
 			condition = stack.popInt();
+			ProgramInterruptedException.check();
 		}
 
 		return null; 
@@ -718,7 +755,15 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 			}
 		}
 
+		int stackSize = stack.size();
+
 		visit(ref.statementSection);
+		returning = false;
+
+		// A function that ends without a return gives the zero value
+		if (node.type != Type.NO_TYPE && stack.size() == stackSize) {
+			stack.pushInt(0);
+		}
 		
 		return null;
 	}
@@ -777,8 +822,12 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 
 	@Override
 	protected Void visitProgram(AST node) {
-		// Visits the function list node
-		visit(node.getChild(0));
+		// Visits the function list node, the output is flushed even if it fails
+		try {
+			visit(node.getChild(0));
+		} finally {
+			out.flush();
+		}
 
 		// End of program, no need to read from stdin anymore
 		in.close();
@@ -798,9 +847,9 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	protected Void visitVarUse(AST node) {
 		int varIdx = node.intData;
 		if (node.type == Type.FLOAT32_TYPE) {
-			stack.pushFloat(memory.loadFloat(varIdx));
+			stack.pushFloat(memory.getFloat(varIdx));
 		} else {
-			stack.pushInt(memory.loadInt(varIdx));
+			stack.pushInt(memory.getInt(varIdx));
 		}
 		return null; 
 	}
@@ -0,0 +1,64 @@
+package code;
+
+import java.util.BitSet;
+
+import static code.Operands.*;
+
+/*
+ * Liveness of the virtual registers over the generated code, as a backwards
+ * dataflow until nothing changes:
+ * in[i] = uses[i] + (out[i] - defs[i]), out[i] = union of in[successors].
+ * Int registers are numbered first in the sets, then the float ones.
+ */
+final class Liveness {
+
+	private Liveness() {}
+
+	// Registers alive right before each instruction
+	static BitSet[] liveIn(Instruction[] code, int[][] kinds, int intVirtuals) {
+		int n = code.length;
+		BitSet[] liveIn = new BitSet[n];
+		for (int i = 0; i < n; i++) liveIn[i] = new BitSet();
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = n - 1; i >= 0; i--) {
+				BitSet live = new BitSet();
+				for (int s : successors(code, i)) {
+					if (s >= 0 && s < n) live.or(liveIn[s]);
+				}
+				for (int j = 0; j < 3; j++) {
+					int k = kinds[i][j];
+					if (isDef(k)) live.clear(virtual(k, get(code[i], j), intVirtuals));
+				}
+				for (int j = 0; j < 3; j++) {
+					int k = kinds[i][j];
+					if (isUse(k)) live.set(virtual(k, get(code[i], j), intVirtuals));
+				}
+				if (!live.equals(liveIn[i])) {
+					liveIn[i] = live;
+					changed = true;
+				}
+			}
+		}
+		return liveIn;
+	}
+
+	// Index of an operand in the liveness sets
+	static int virtual(int kind, int reg, int intVirtuals) {
+		return isFloat(kind) ? intVirtuals + reg : reg;
+	}
+
+	static int[] successors(Instruction[] code, int i) {
+		Instruction instr = code[i];
+		switch (instr.op) {
+			case HALT:	return new int[0];
+			case JUMP:	return new int[] { instr.o1 };
+			case BOTb:
+			case BOFb:	return new int[] { i + 1, i + instr.o2 };
+			default:	return new int[] { i + 1 };
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package code;
+
+import static code.BytecodeWriter.HEADER_SIZE;
+import static code.BytecodeWriter.MAGIC;
+import static code.BytecodeWriter.RECORD_SIZE;
+import static code.BytecodeWriter.VERSION;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import tables.StrTable;
+
+/*
+ * A program in the binary format written by BytecodeWriter, mapped into
+ * memory instead of read. The instruction records are used in place by the
+ * NstmVM, so loading does not create any object per instruction.
+ */
+public final class MappedProgram {
+
+	final IntBuffer code;	// Instruction records, 4 ints each
+	final int size;			// Amount of instructions
+	final StrTable st;
+
+	private MappedProgram(IntBuffer code, int size, StrTable st) {
+		this.code = code;
+		this.size = size;
+		this.st = st;
+	}
+
+	public static MappedProgram load(Path path) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// A buffer can't map more, and a valid program is far smaller
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Not an NSTM binary: " + path);
+			}
+
+			// The mapping stays valid after the channel is closed
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+			throw new IOException("Not an NSTM binary: " + path);
+		}
+		if (buf.getInt(4) != VERSION) {
+			throw new IOException("Unsupported NSTM binary version " + buf.getInt(4) + ": " + path);
+		}
+
+		// In long, so a corrupt size can't overflow past the check
+		int size = buf.getInt(8);
+		int strCount = buf.getInt(12);
+		long end = HEADER_SIZE + (long) size * RECORD_SIZE;
+		if (size < 0 || strCount < 0 || end > buf.limit()) {
+			throw new IOException("Truncated NSTM binary: " + path);
+		}
+		int codeEnd = (int) end;
+
+		// A slice starts big-endian, so the order must be set again
+		IntBuffer code = buf.position(HEADER_SIZE).limit(codeEnd)
+			.slice()
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.asIntBuffer();
+
+		// Strings are few and small, so they are decoded right away
+		StrTable st = new StrTable();
+		buf.limit(buf.capacity()).position(codeEnd);
+		try {
+			for (int i = 0; i < strCount; i++) {
+				int length = buf.getInt();
+				if (length < 0 || length > buf.remaining()) throw new BufferUnderflowException();
+
+				byte[] bytes = new byte[length];
+				buf.get(bytes);
+				st.add(new String(bytes, StandardCharsets.UTF_8));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated NSTM binary: " + path);
+		}
+
+		return new MappedProgram(code, size, st);
+	}
+
+}
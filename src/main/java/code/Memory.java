@@ -1,58 +1,93 @@
 package code;
 
-import java.util.Vector;
-
 import tables.VarTable;
 
-@SuppressWarnings("serial")
-public class Memory extends Vector<Word> {
+/*
+ * Data memory with one word for each variable, plus the array elements.
+ * Each memory owns its size, so several programs can run in the same JVM.
+ *
+ * The load and store methods check the address on every access. The get and
+ * put methods skip it, and should only be used with addresses that are known
+ * to be valid, like the var indexes the semantic checker put in the AST.
+ */
+public abstract class Memory {
+
+	private final int size;
 
-	private static int memSize = 0;
+	protected Memory(int size) {
+		this.size = size;
+	}
 
 	// Allocate a memory space the same size as the sum of all variable sizes
-	public Memory(VarTable vt) {
+	protected static int sizeOf(VarTable vt) {
 		// Memory size starts the same as the VarTable size
-		Memory.memSize = vt.size();
+		int size = vt.size();
 
 		// Adds the var args into account for the memory size
 		for (int i = 0; i < vt.size(); i++) {
 			int argSize = vt.getArgSize(i);
 
-			if(argSize > 0) Memory.memSize += argSize;
+			if(argSize > 0) size += argSize;
 		}
+		return size;
+	}
 
-		// Empties the memory
-		for (int i = 0; i < Memory.memSize; i++) {
-			this.add(Word.fromInt(0));
-		}
+	// Memory kept in a Java int[]
+	public static Memory onHeap(VarTable vt) {
+		return new HeapMemory(sizeOf(vt));
+	}
+
+	// Memory kept in a direct ByteBuffer, outside of the Java heap
+	public static Memory offHeap(VarTable vt) {
+		return new DirectMemory(sizeOf(vt));
+	}
+
+	public final int size() {
+		return size;
 	}
 
-	public static void checkAddress(int addr) {
-		if (addr < 0 || addr >= Memory.memSize) throw new Error("Memory address not valid! Aborting");
+	public final void checkAddress(int addr) {
+		if (addr < 0 || addr >= size) throw new Error("Memory address not valid! Aborting");
 	}
 	
-	public void storeInt(int addr, int value) {
-		Memory.checkAddress(addr);
+	public final void storeInt(int addr, int value) {
+		checkAddress(addr);
 
-		this.set(addr, Word.fromInt(value));
+		putInt(addr, value);
 	}
 	
-	public int loadInt(int addr) {
-		Memory.checkAddress(addr);
+	public final int loadInt(int addr) {
+		checkAddress(addr);
 
-		return this.get(addr).toInt();
+		return getInt(addr);
 	}
 	
-	public void storeFloat(int addr, float value) {
-		Memory.checkAddress(addr);
+	public final void storeFloat(int addr, float value) {
+		checkAddress(addr);
 
-		this.set(addr, Word.fromFloat(value));
+		putFloat(addr, value);
 	}
 	
-	public float loadFloat(int addr) {
-		Memory.checkAddress(addr);
+	public final float loadFloat(int addr) {
+		checkAddress(addr);
+
+		return getFloat(addr);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Unchecked accesses
+	 *------------------------------------------------------------------------------*/
+
+	public abstract void putInt(int addr, int value);
+
+	public abstract int getInt(int addr);
+
+	public final void putFloat(int addr, float value) {
+		putInt(addr, Word.fromFloat(value));
+	}
 
-		return this.get(addr).toFloat();
+	public final float getFloat(int addr) {
+		return Word.toFloat(getInt(addr));
 	}
 	
 }
@@ -0,0 +1,339 @@
+package code;
+
+import static code.Instruction.DATA_MEM_SIZE;
+import static code.Instruction.FLOAT_REGS_COUNT;
+import static code.Instruction.INSTR_MEM_SIZE;
+import static code.Instruction.INT_REGS_COUNT;
+
+import java.io.PrintStream;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+import tables.StrTable;
+
+/*
+ * Executes the instructions generated by CodeGen inside the JVM, with the same
+ * behavior as the NSTM simulator written in C, but without printing the
+ * program as text and parsing it back.
+ * The instructions are read from an IntBuffer, either wrapping an array packed
+ * from CodeGen's output or mapped straight from a compiled binary file.
+ */
+public final class NstmVM {
+
+	private static final OpCode[] OPCODES = OpCode.values();
+
+	// Every instruction takes 4 ints: opcode ordinal, o1, o2 and o3
+	private static final int INSTR_WIDTH = 4;
+
+	private final IntBuffer code;	// Instruction memory
+	private final int size;			// Amount of instructions in the program
+	private final boolean[] badRegister;	// Instructions with a register operand out of range
+
+	private final int[] is = new int[INT_REGS_COUNT];			// Integer registers
+	private final float[] fs = new float[FLOAT_REGS_COUNT];	// Float registers
+	private final Memory dataMem = new HeapMemory(DATA_MEM_SIZE);
+
+	private final StrTable st;
+	// Streams of the current run
+	private InputSource in;
+	private OutputSink out;
+	private PrintStream err;
+
+	public NstmVM(Instruction[] program, StrTable st) {
+		this(pack(program), program.length, st);
+	}
+
+	public NstmVM(MappedProgram program) {
+		this(program.code, program.size, program.st);
+	}
+
+	private NstmVM(IntBuffer code, int size, StrTable st) {
+		if (size > INSTR_MEM_SIZE) throw new Error("Program does not fit in the instruction memory! Aborting");
+
+		this.code = code;
+		this.size = size;
+		this.badRegister = checkRegisters(code, size);
+
+		// Strings read at runtime are added to a copy, the compiler's table stays intact
+		this.st = new StrTable();
+		this.st.addAll(st);
+	}
+
+	private static IntBuffer pack(Instruction[] program) {
+		int[] code = new int[program.length * INSTR_WIDTH];
+
+		for (int addr = 0; addr < program.length; addr++) {
+			Instruction instr = program[addr];
+
+			int base = addr * INSTR_WIDTH;
+			code[base]     = instr.op.ordinal();
+			code[base + 1] = instr.o1;
+			code[base + 2] = instr.o2;
+			code[base + 3] = instr.o3;
+		}
+		return IntBuffer.wrap(code);
+	}
+
+	// The registers are checked once, when loading, but like the simulator
+	// an instruction only fails when it runs
+	private static boolean[] checkRegisters(IntBuffer code, int size) {
+		boolean[] bad = new boolean[size];
+
+		for (int addr = 0; addr < size; addr++) {
+			int base = addr * INSTR_WIDTH;
+			int op = code.get(base);
+			if (op < 0 || op >= OPCODES.length) continue;	// Fails as an unknown opcode
+
+			Instruction instr = new Instruction(OPCODES[op], code.get(base + 1), code.get(base + 2), code.get(base + 3));
+			int[] kinds = Operands.kinds(instr);
+			for (int j = 0; j < 3; j++) {
+				if (kinds[j] == Operands.NONE) continue;
+
+				int reg = Operands.get(instr, j);
+				int count = Operands.isFloat(kinds[j]) ? FLOAT_REGS_COUNT : INT_REGS_COUNT;
+				if (reg < 0 || reg >= count) bad[addr] = true;
+			}
+		}
+		return bad;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Run
+	 *------------------------------------------------------------------------------*/
+
+	public void run() {
+		// Strings are printed in UTF-8, like the simulator prints the text of -c
+		run(InputSource.stdin(), new OutputSink(System.out, StandardCharsets.UTF_8), System.err);
+	}
+
+	public void run(InputSource in, OutputSink out, PrintStream err) {
+		this.in = in;
+		this.out = out;
+		this.err = err;
+		try {
+			execute();
+		} finally {
+			out.flush();
+		}
+	}
+
+	private void execute() {
+		final IntBuffer code = this.code;
+		final int[] is = this.is;
+		final float[] fs = this.fs;
+
+		int pc = 0;
+
+		while (true) {
+			if (pc < 0 || pc >= size) {
+				error("ERROR: Invalid access to Instruction Memory!");
+				return;
+			}
+
+			// Opcodes are only decoded when the instruction runs
+			int base = pc * INSTR_WIDTH;
+			int op = code.get(base);
+			int o1 = code.get(base + 1);
+			int o2 = code.get(base + 2);
+			int o3 = code.get(base + 3);
+
+			if (op < 0 || op >= OPCODES.length) {
+				error("ERROR: Unknown opcode: " + op + "!");
+				return;
+			}
+			if (badRegister[pc]) {
+				error("ERROR: Invalid register!");
+				return;
+			}
+
+			switch (OPCODES[op]) {
+				case HALT:
+					out.writeString("HALTED: Execution finished!");
+					out.newLine();
+					return;
+				case NOOP:
+					break;
+
+				case ADDi:	is[o1] = is[o2] + is[o3];	break;
+				case ADDf:	fs[o1] = fs[o2] + fs[o3];	break;
+				case SUBi:	is[o1] = is[o2] - is[o3];	break;
+				case SUBf:	fs[o1] = fs[o2] - fs[o3];	break;
+				case MULi:	is[o1] = is[o2] * is[o3];	break;
+				case MULf:	fs[o1] = fs[o2] * fs[o3];	break;
+				case DIVi:
+					if (is[o3] == 0) { divisionByZero(); return; }
+					is[o1] = is[o2] / is[o3];
+					break;
+				case DIVf:
+					if (fs[o3] == 0.0f) { divisionByZero(); return; }
+					fs[o1] = fs[o2] / fs[o3];
+					break;
+				case MODi:
+					if (is[o3] == 0) { divisionByZero(); return; }
+					is[o1] = is[o2] % is[o3];
+					break;
+				case MODf:
+					if (fs[o3] == 0.0f) { divisionByZero(); return; }
+					fs[o1] = fs[o2] % fs[o3];
+					break;
+
+				case EQUi:	is[o1] = is[o2] == is[o3] ? 1 : 0;	break;
+				case EQUf:	is[o1] = fs[o2] == fs[o3] ? 1 : 0;	break;
+				case EQUs:	is[o1] = st.equalStrings(is[o2], is[o3]) ? 1 : 0;	break;
+				case NEQi:	is[o1] = is[o2] != is[o3] ? 1 : 0;	break;
+				case NEQf:	is[o1] = fs[o2] != fs[o3] ? 1 : 0;	break;
+				case NEQs:	is[o1] = st.equalStrings(is[o2], is[o3]) ? 0 : 1;	break;
+				case LTHi:	is[o1] = is[o2] < is[o3] ? 1 : 0;	break;
+				case LTHf:	is[o1] = fs[o2] < fs[o3] ? 1 : 0;	break;
+				case LTHs:	is[o1] = compareStrings(o2, o3) < 0 ? 1 : 0;	break;
+				case LTEi:	is[o1] = is[o2] <= is[o3] ? 1 : 0;	break;
+				case LTEf:	is[o1] = fs[o2] <= fs[o3] ? 1 : 0;	break;
+				case LTEs:	is[o1] = compareStrings(o2, o3) <= 0 ? 1 : 0;	break;
+				case GTHi:	is[o1] = is[o2] > is[o3] ? 1 : 0;	break;
+				case GTHf:	is[o1] = fs[o2] > fs[o3] ? 1 : 0;	break;
+				case GTHs:	is[o1] = compareStrings(o2, o3) > 0 ? 1 : 0;	break;
+				case GTEi:	is[o1] = is[o2] >= is[o3] ? 1 : 0;	break;
+				case GTEf:	is[o1] = fs[o2] >= fs[o3] ? 1 : 0;	break;
+				case GTEs:	is[o1] = compareStrings(o2, o3) >= 0 ? 1 : 0;	break;
+
+				// A jump back may close a loop, which stops if the thread was interrupted
+				case JUMP:
+					if (o1 <= pc) ProgramInterruptedException.check();
+					pc = o1;
+					continue;
+				case BOTb:
+					if (is[o1] == 1) { if (o2 <= 0) ProgramInterruptedException.check(); pc += o2; continue; }
+					break;
+				case BOFb:
+					if (is[o1] == 0) { if (o2 <= 0) ProgramInterruptedException.check(); pc += o2; continue; }
+					break;
+
+				case LDWi:
+					if (!validDataAddress(o2)) return;
+					is[o1] = dataMem.getInt(o2);
+					break;
+				case LDWf:
+					if (!validDataAddress(o2)) return;
+					fs[o1] = dataMem.getFloat(o2);
+					break;
+				case LDIi:	is[o1] = o2;						break;
+				case LDIf:	fs[o1] = Word.toFloat(o2);	break; // The float was encoded as an int
+				case STWi:
+					if (!validDataAddress(o1)) return;
+					dataMem.putInt(o1, is[o2]);
+					break;
+				case STWf:
+					if (!validDataAddress(o1)) return;
+					dataMem.putFloat(o1, fs[o2]);
+					break;
+
+				case SSTR:
+					// Strings are loaded with the table, nothing to execute
+					break;
+
+				case CALL:
+					if (!call(o1, o2)) return;
+					break;
+
+				default:
+					error("ERROR: Unknown opcode: " + op + "!");
+					return;
+			}
+			pc++;
+		}
+	}
+
+	// The output so far comes before the error, like in the simulator
+	private void error(String message) {
+		out.flush();
+		err.println(message);
+	}
+
+	private void divisionByZero() {
+		error("ERROR: Division by zero!");
+	}
+
+	private boolean validDataAddress(int addr) {
+		if (addr < 0 || addr >= DATA_MEM_SIZE) {
+			error("ERROR: Invalid access to Data Memory!");
+			return false;
+		}
+		return true;
+	}
+
+	private int compareStrings(int y, int z) {
+		return st.compareStrings(is[y], is[z]);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	System calls
+	 *------------------------------------------------------------------------------*/
+
+	// See the CALL table in OpCode. The prompts are flushed before reading.
+	private boolean call(int syscall, int x) {
+		switch (syscall) {
+			case 0:
+				prompt("read (int): ");
+				is[x] = in.nextInt();
+				return true;
+			case 1:
+				prompt("read (float32): ");
+				fs[x] = in.nextFloat();
+				return true;
+			case 2:
+				int value;
+				do {
+					prompt("read (bool - 0 = false, 1 = true): ");
+					value = in.nextInt();
+				} while (value != 0 && value != 1);
+				is[x] = value;
+				return true;
+			case 3:
+				prompt("read (str): ");
+				is[x] = st.addString(in.next());
+				return true;
+			case 4:
+				out.writeInt(is[x]);
+				out.newLine();
+				return true;
+			case 5:
+				out.writeFixed(fs[x]);
+				out.newLine();
+				return true;
+			case 6:
+				out.writeBool(is[x] != 0);
+				out.newLine();
+				return true;
+			case 7:
+				out.writeEscaped(st.get(is[x]));
+				out.newLine();
+				return true;
+			default:
+				error("ERROR: Invalid code in CALL!");
+				return false;
+		}
+	}
+
+	private void prompt(String text) {
+		out.writeString(text);
+		out.flush();
+	}
+
+	// Removes the quotes and expands '\n', like the simulator does
+	static String escapeString(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"') continue;
+
+			if (c == '\\' && i + 1 < s.length() && s.charAt(i + 1) == 'n') {
+				sb.append('\n');
+				i++;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,73 @@
+package code;
+
+/*
+ * What each operand of an instruction is, for the passes that work on the
+ * registers of the generated code.
+ */
+final class Operands {
+
+	static final int NONE = 0;
+	static final int INT_USE = 1;
+	static final int INT_DEF = 2;
+	static final int FLOAT_USE = 3;
+	static final int FLOAT_DEF = 4;
+
+	private Operands() {}
+
+	// Kinds of o1, o2 and o3
+	static int[] kinds(Instruction instr) {
+		switch (instr.op) {
+			case ADDi: case SUBi: case MULi: case DIVi: case MODi:
+			case EQUi: case NEQi: case LTHi: case LTEi: case GTHi: case GTEi:
+			case EQUs: case NEQs: case LTHs: case LTEs: case GTHs: case GTEs:
+				return new int[] { INT_DEF, INT_USE, INT_USE };
+			case ADDf: case SUBf: case MULf: case DIVf: case MODf:
+				return new int[] { FLOAT_DEF, FLOAT_USE, FLOAT_USE };
+			case EQUf: case NEQf: case LTHf: case LTEf: case GTHf: case GTEf:
+				return new int[] { INT_DEF, FLOAT_USE, FLOAT_USE };
+			case BOTb: case BOFb:
+				return new int[] { INT_USE, NONE, NONE };
+			case LDWi: case LDIi:
+				return new int[] { INT_DEF, NONE, NONE };
+			case LDWf: case LDIf:
+				return new int[] { FLOAT_DEF, NONE, NONE };
+			case STWi:
+				return new int[] { NONE, INT_USE, NONE };
+			case STWf:
+				return new int[] { NONE, FLOAT_USE, NONE };
+			case CALL:
+				switch (instr.o1) {
+					case 0: case 2: case 3:	return new int[] { NONE, INT_DEF, NONE };
+					case 1:					return new int[] { NONE, FLOAT_DEF, NONE };
+					case 4: case 6: case 7:	return new int[] { NONE, INT_USE, NONE };
+					case 5:					return new int[] { NONE, FLOAT_USE, NONE };
+					default:				return new int[] { NONE, NONE, NONE };
+				}
+			default:
+				return new int[] { NONE, NONE, NONE };
+		}
+	}
+
+	static boolean isUse(int kind) {
+		return kind == INT_USE || kind == FLOAT_USE;
+	}
+
+	static boolean isDef(int kind) {
+		return kind == INT_DEF || kind == FLOAT_DEF;
+	}
+
+	static boolean isFloat(int kind) {
+		return kind == FLOAT_USE || kind == FLOAT_DEF;
+	}
+
+	static int get(Instruction instr, int j) {
+		return j == 0 ? instr.o1 : j == 1 ? instr.o2 : instr.o3;
+	}
+
+	static void set(Instruction instr, int j, int value) {
+		if (j == 0) instr.o1 = value;
+		else if (j == 1) instr.o2 = value;
+		else instr.o3 = value;
+	}
+
+}
@@ -0,0 +1,219 @@
+package code;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+
+/*
+ * Buffer for what a running program prints. Values are written as bytes into
+ * an array, and only reach the stream when it is full or flushed, instead of
+ * taking the PrintStream lock on every value and every space.
+ *
+ * The bytes are the same System.out would print: ints and bools are written
+ * digit by digit, floats like Float.toString (writeFloat) or printf("%f")
+ * (writeFixed), and lines end with the line separator. Whoever owns the sink
+ * flushes it before reading the input, so the prompts show up, before
+ * printing an error, so the order is kept, and when the program ends.
+ * Strings are encoded with the platform charset like System.out does, or
+ * with the one given, as the NSTM backends print them in UTF-8.
+ */
+public final class OutputSink {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] NEW_LINE = System.lineSeparator().getBytes();
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+	private final OutputStream out;
+	private final Charset charset;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int count;
+
+	public OutputSink(OutputStream out) {
+		this(out, Charset.defaultCharset());
+	}
+
+	public OutputSink(OutputStream out, Charset charset) {
+		this.out = out;
+		this.charset = charset;
+	}
+
+	public void flush() {
+		try {
+			out.write(buffer, 0, count);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		count = 0;
+	}
+
+	// Room for n more bytes, n at most BUFFER_SIZE
+	private void reserve(int n) {
+		if (count + n > BUFFER_SIZE) flush();
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Values
+	 *------------------------------------------------------------------------------*/
+
+	public void writeByte(char c) {
+		reserve(1);
+		buffer[count++] = (byte) c;
+	}
+
+	public void newLine() {
+		reserve(NEW_LINE.length);
+		System.arraycopy(NEW_LINE, 0, buffer, count, NEW_LINE.length);
+		count += NEW_LINE.length;
+	}
+
+	public void writeBool(boolean value) {
+		byte[] b = value ? TRUE : FALSE;
+		reserve(b.length);
+		System.arraycopy(b, 0, buffer, count, b.length);
+		count += b.length;
+	}
+
+	public void writeInt(int value) {
+		writeLong(value);
+	}
+
+	// Digits are written backwards from the end of their room
+	private void writeLong(long value) {
+		reserve(20);
+		if (value < 0) {
+			buffer[count++] = '-';
+		} else {
+			value = -value;	// Negative, so Long.MIN_VALUE fits
+		}
+
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10) digits++;
+
+		int pos = count + digits;
+		for (int i = pos - 1; i >= count; i--) {
+			buffer[i] = (byte) ('0' - value % 10);
+			value /= 10;
+		}
+		count = pos;
+	}
+
+	// Same as Float.toString. Whole values below 10^7 are written as digits
+	// followed by ".0", the others take the Java formatting.
+	public void writeFloat(float value) {
+		if (value == (int) value && Math.abs(value) < 1e7f) {
+			if (value == 0 && Float.floatToRawIntBits(value) != 0) writeByte('-');
+			writeInt((int) value);
+			writeByte('.');
+			writeByte('0');
+		} else {
+			writeAscii(Float.toString(value));
+		}
+	}
+
+	// Same as printf("%f"), the exact value rounded half even to 6 decimals.
+	// A float times 10^6 fits in a double without rounding, so the digits
+	// come from a long unless the value is too large for one.
+	public void writeFixed(float value) {
+		boolean negative = (Float.floatToRawIntBits(value) & 0x80000000) != 0;
+
+		if (Float.isNaN(value)) {
+			writeAscii(negative ? "-nan" : "nan");
+			return;
+		}
+		if (Float.isInfinite(value)) {
+			writeAscii(negative ? "-inf" : "inf");
+			return;
+		}
+
+		if (negative) writeByte('-');
+
+		double micros = Math.rint(Math.abs((double) value) * 1e6);
+		if (micros >= 0x1p63) {
+			writeAscii(new BigDecimal(Math.abs(value)).setScale(6, RoundingMode.HALF_EVEN).toPlainString());
+			return;
+		}
+
+		long units = (long) micros;
+		writeLong(units / 1000000);
+		writeByte('.');
+
+		reserve(6);
+		long fraction = units % 1000000;
+		for (int i = count + 5; i >= count; i--) {
+			buffer[i] = (byte) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		count += 6;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Strings
+	 *------------------------------------------------------------------------------*/
+
+	public void writeString(String s) {
+		if (!isAscii(s)) {
+			writeBytes(s.getBytes(charset));
+			return;
+		}
+		writeAscii(s);
+	}
+
+	// Removes the quotes and expands '\n', like the simulator does
+	public void writeEscaped(String s) {
+		if (!isAscii(s)) {
+			writeString(NstmVM.escapeString(s));
+			return;
+		}
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"') continue;
+
+			if (c == '\\' && i + 1 < s.length() && s.charAt(i + 1) == 'n') {
+				writeByte('\n');
+				i++;
+			} else {
+				writeByte(c);
+			}
+		}
+	}
+
+	private void writeAscii(String s) {
+		int n = s.length();
+		for (int start = 0; start < n; start += BUFFER_SIZE) {
+			int end = Math.min(n, start + BUFFER_SIZE);
+			reserve(end - start);
+			for (int i = start; i < end; i++) {
+				buffer[count++] = (byte) s.charAt(i);
+			}
+		}
+	}
+
+	private void writeBytes(byte[] b) {
+		if (b.length > BUFFER_SIZE) {
+			flush();
+			try {
+				out.write(b);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return;
+		}
+		reserve(b.length);
+		System.arraycopy(b, 0, buffer, count, b.length);
+		count += b.length;
+	}
+
+	private static boolean isAscii(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) >= 0x80) return false;
+		}
+		return true;
+	}
+
+}
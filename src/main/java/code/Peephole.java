@@ -0,0 +1,247 @@
+package code;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static code.OpCode.*;
+import static code.Operands.*;
+
+/*
+ * Peephole optimizations over the code made by CodeGen, before the register
+ * allocation. Only the loads, which come from the AST path where every
+ * virtual register is written once, are forwarded:
+ *  - a load of a variable that was stored or loaded before in the same basic
+ *    block is dropped, and its uses read the register that is already there;
+ *  - loads whose register is never read are dropped;
+ *  - jumps and branches to a JUMP go straight to its target;
+ *  - jumps and branches to the next instruction are dropped.
+ * It runs until nothing changes, then fixes the jump targets and the branch
+ * offsets for the removed instructions.
+ * The Promotion now runs first and turns the loads of the variables into
+ * registers, so forwarding only finds loads in code that skipped it.
+ */
+final class Peephole {
+
+	private Instruction[] code;
+	private boolean[] removed;
+	private int removedCount;
+
+	Instruction[] optimize(Instruction[] code) {
+		this.code = code;
+		this.removed = new boolean[code.length];
+		this.removedCount = 0;
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			changed |= forwardLoads();
+			changed |= threadJumps();
+			changed |= removeDeadLoads();
+		}
+
+		return compact();
+	}
+
+	// Instructions removed by the last optimize
+	int removedCount() {
+		return removedCount;
+	}
+
+	private void remove(int i) {
+		removed[i] = true;
+		removedCount++;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Loads
+	 *------------------------------------------------------------------------------*/
+
+	private boolean forwardLoads() {
+		boolean[] leader = leaders();
+		Map<Integer, Integer> intRenames = new HashMap<>();
+		Map<Integer, Integer> floatRenames = new HashMap<>();
+
+		// Register holding the value of each address in the current block
+		Map<Integer, Integer> known = new HashMap<>();
+		boolean changed = false;
+
+		for (int i = 0; i < code.length; i++) {
+			if (leader[i]) known.clear();
+			if (removed[i]) continue;
+
+			Instruction instr = code[i];
+			switch (instr.op) {
+				case STWi:
+				case STWf:
+					known.put(instr.o1, resolve(instr.op == STWf ? floatRenames : intRenames, instr.o2));
+					break;
+				case LDWi:
+				case LDWf:
+					Integer reg = known.get(instr.o2);
+					if (reg != null) {
+						(instr.op == LDWf ? floatRenames : intRenames).put(instr.o1, reg);
+						remove(i);
+						changed = true;
+					} else {
+						known.put(instr.o2, instr.o1);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+
+		if (changed) rename(intRenames, floatRenames);
+		return changed;
+	}
+
+	private static int resolve(Map<Integer, Integer> renames, int reg) {
+		Integer to = renames.get(reg);
+		while (to != null) {
+			reg = to;
+			to = renames.get(reg);
+		}
+		return reg;
+	}
+
+	private void rename(Map<Integer, Integer> intRenames, Map<Integer, Integer> floatRenames) {
+		for (int i = 0; i < code.length; i++) {
+			if (removed[i]) continue;
+
+			int[] k = kinds(code[i]);
+			for (int j = 0; j < 3; j++) {
+				if (!isUse(k[j])) continue;
+				set(code[i], j, resolve(isFloat(k[j]) ? floatRenames : intRenames, get(code[i], j)));
+			}
+		}
+	}
+
+	private boolean removeDeadLoads() {
+		Map<Integer, Integer> intUses = new HashMap<>();
+		Map<Integer, Integer> floatUses = new HashMap<>();
+		for (int i = 0; i < code.length; i++) {
+			if (removed[i]) continue;
+
+			int[] k = kinds(code[i]);
+			for (int j = 0; j < 3; j++) {
+				if (isUse(k[j])) (isFloat(k[j]) ? floatUses : intUses).merge(get(code[i], j), 1, Integer::sum);
+			}
+		}
+
+		boolean changed = false;
+		for (int i = 0; i < code.length; i++) {
+			if (removed[i]) continue;
+
+			Instruction instr = code[i];
+			switch (instr.op) {
+				case LDIi:
+				case LDWi:
+					if (!intUses.containsKey(instr.o1)) { remove(i); changed = true; }
+					break;
+				case LDIf:
+				case LDWf:
+					if (!floatUses.containsKey(instr.o1)) { remove(i); changed = true; }
+					break;
+				default:
+					break;
+			}
+		}
+		return changed;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Jumps
+	 *------------------------------------------------------------------------------*/
+
+	private boolean threadJumps() {
+		boolean changed = false;
+
+		for (int i = 0; i < code.length; i++) {
+			if (removed[i]) continue;
+
+			Instruction instr = code[i];
+			if (instr.op != JUMP && instr.op != BOTb && instr.op != BOFb) continue;
+
+			int target = target(i);
+			int last = follow(target);
+			if (last != target) {
+				if (instr.op == JUMP) instr.o1 = last;
+				else instr.o2 = last - i;
+				changed = true;
+			}
+
+			if (nextLive(i + 1) == nextLive(last)) {
+				remove(i);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private int target(int i) {
+		return code[i].op == JUMP ? code[i].o1 : i + code[i].o2;
+	}
+
+	// Follows a chain of jumps to where it ends, stopping at loops like 'for {}'
+	private int follow(int addr) {
+		int hops = 0;
+		addr = nextLive(addr);
+		while (addr < code.length && code[addr].op == JUMP && hops++ < code.length) {
+			int next = nextLive(code[addr].o1);
+			if (next == addr) break;
+			addr = next;
+		}
+		return addr;
+	}
+
+	// The instruction that will run at addr, once the removed ones are gone
+	private int nextLive(int addr) {
+		while (addr < code.length && removed[addr]) addr++;
+		return addr;
+	}
+
+	private boolean[] leaders() {
+		boolean[] leader = new boolean[code.length + 1];
+		leader[0] = true;
+		for (int i = 0; i < code.length; i++) {
+			if (removed[i]) continue;
+
+			OpCode op = code[i].op;
+			if (op == JUMP || op == BOTb || op == BOFb) {
+				leader[target(i)] = true;
+				leader[i + 1] = true;
+			}
+		}
+		return leader;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Compact
+	 *------------------------------------------------------------------------------*/
+
+	private Instruction[] compact() {
+		int n = code.length;
+		int[] newAddr = new int[n + 1];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			newAddr[i] = count;
+			if (!removed[i]) count++;
+		}
+		newAddr[n] = count;
+
+		Instruction[] out = new Instruction[count];
+		for (int i = 0; i < n; i++) {
+			if (removed[i]) continue;
+
+			Instruction instr = code[i];
+			if (instr.op == JUMP) {
+				instr.o1 = newAddr[instr.o1];
+			} else if (instr.op == BOTb || instr.op == BOFb) {
+				instr.o2 = newAddr[i + instr.o2] - newAddr[i];
+			}
+			out[newAddr[i]] = instr;
+		}
+		return out;
+	}
+
+}
@@ -0,0 +1,17 @@
+package code;
+
+// A program stopped because its thread was interrupted, which the server
+// does to a request that runs for too long. Every backend checks for it on
+// each iteration of a loop, so a program that never reads nor prints stops too.
+@SuppressWarnings("serial")
+public final class ProgramInterruptedException extends RuntimeException {
+
+	public ProgramInterruptedException() {
+		super("The program was interrupted");
+	}
+
+	public static void check() {
+		if (Thread.currentThread().isInterrupted()) throw new ProgramInterruptedException();
+	}
+
+}
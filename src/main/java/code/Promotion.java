@@ -0,0 +1,360 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static code.OpCode.*;
+import static code.Operands.*;
+
+/*
+ * Promotes the variables from data_mem to registers, for the code made by
+ * CodeGen from the AST, which loads a variable every time it is read and
+ * stores it every time it is written.
+ *
+ * Each address gets a home register holding the variable for the whole
+ * program. A load is dropped and its uses read the home register, and a
+ * stored value is computed straight into it. When that would change what is
+ * read, they become copies instead, an add of zero as the NSTM has no move.
+ * The variables only live in the main function and the I/O calls take
+ * registers, so nothing has to be written back to data_mem. Home registers
+ * read before being written start at zero, like data_mem.
+ */
+final class Promotion {
+
+	private Instruction[] code;
+	private int[][] kinds;
+	private boolean[] leader;
+	private int[] block;		// Basic block of each instruction, numbered in order
+	private boolean[] removed;
+	private int intVirtuals;
+	private int floatVirtuals;
+
+	private final Map<Integer, Integer> homes = new HashMap<>();	// Address to home register
+	private final BitSet intHomes = new BitSet();
+	private final BitSet floatHomes = new BitSet();
+	private int intZero;
+	private int floatZero;
+
+	Instruction[] promote(Instruction[] code) {
+		this.code = code;
+		this.removed = new boolean[code.length];
+		this.homes.clear();
+		this.intHomes.clear();
+		this.floatHomes.clear();
+		intVirtuals = 0;
+		floatVirtuals = 0;
+		classify();
+		leader = leaders();
+		block = blocks();
+		intZero = -1;
+		floatZero = -1;
+
+		promoteLoads();
+		classify();
+		promoteStores();
+
+		return initialize(compact());
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Loads and stores
+	 *------------------------------------------------------------------------------*/
+
+	// 'LDW x, addr' goes away when the variable does not change while x is used
+	private void promoteLoads() {
+		Map<Integer, Integer> intRenames = new HashMap<>();
+		Map<Integer, Integer> floatRenames = new HashMap<>();
+		Occurrences ints = new Occurrences(false);
+		Occurrences floats = new Occurrences(true);
+		Map<Integer, List<Integer>> stores = stores();
+
+		for (int i = 0; i < code.length; i++) {
+			Instruction instr = code[i];
+			if (instr.op != LDWi && instr.op != LDWf) continue;
+
+			boolean isFloat = instr.op == LDWf;
+			int home = home(instr.o2, isFloat);
+			int last = lastUseInBlock(i, instr.o1, isFloat ? floats : ints);
+			if (last >= 0 && !storedBetween(stores.get(instr.o2), i, last)) {
+				(isFloat ? floatRenames : intRenames).put(instr.o1, home);
+				removed[i] = true;
+			} else {
+				code[i] = copy(isFloat, instr.o1, home);
+			}
+		}
+
+		for (int i = 0; i < code.length; i++) {
+			if (removed[i]) continue;
+
+			int[] k = kinds[i];
+			for (int j = 0; j < 3; j++) {
+				if (!isUse(k[j])) continue;
+
+				Integer to = (isFloat(k[j]) ? floatRenames : intRenames).get(get(code[i], j));
+				if (to != null) set(code[i], j, to);
+			}
+		}
+	}
+
+	// 'STW addr, x' goes away when x can be computed in the home register
+	private void promoteStores() {
+		Occurrences ints = new Occurrences(false);
+		Occurrences floats = new Occurrences(true);
+
+		// Last instruction before the current one reading or writing each home
+		Map<Integer, Integer> intTouched = new HashMap<>();
+		Map<Integer, Integer> floatTouched = new HashMap<>();
+
+		for (int i = 0; i < code.length; i++) {
+			Instruction instr = code[i];
+			if (removed[i]) continue;
+
+			if (instr.op == STWi || instr.op == STWf) {
+				boolean isFloat = instr.op == STWf;
+				Occurrences regs = isFloat ? floats : ints;
+				Map<Integer, Integer> touched = isFloat ? floatTouched : intTouched;
+				int home = home(instr.o1, isFloat);
+				int def = (isFloat ? floatHomes : intHomes).get(instr.o2) ? -1 : regs.onlyDef(instr.o2);
+				if (def >= 0 && def < i && regs.onlyUse(instr.o2) == i && !homeTouched(touched.get(home), def, i)) {
+					setDef(code[def], kinds[def], home);
+					touched.put(home, def);
+					removed[i] = true;
+					continue;
+				}
+				code[i] = copy(isFloat, home, instr.o2);
+				kinds[i] = Operands.kinds(code[i]);
+			}
+
+			// Every register is recorded, only the homes are looked up
+			int[] k = kinds[i];
+			for (int j = 0; j < 3; j++) {
+				if (k[j] != NONE) (isFloat(k[j]) ? floatTouched : intTouched).put(get(code[i], j), i);
+			}
+		}
+	}
+
+	private int home(int addr, boolean isFloat) {
+		Integer home = homes.get(addr);
+		if (home == null) {
+			home = isFloat ? floatVirtuals++ : intVirtuals++;
+			homes.put(addr, home);
+			(isFloat ? floatHomes : intHomes).set(home);
+		}
+		return home;
+	}
+
+	private Instruction copy(boolean isFloat, int dst, int src) {
+		if (isFloat) {
+			if (floatZero < 0) floatZero = floatVirtuals++;
+			return new Instruction(SUBf, dst, src, floatZero);	// x - 0.0 keeps -0.0
+		}
+		if (intZero < 0) intZero = intVirtuals++;
+		return new Instruction(ADDi, dst, src, intZero);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Uses and definitions
+	 *------------------------------------------------------------------------------*/
+
+	// Last use of the register, or -1 when one is not later in the same block
+	private int lastUseInBlock(int def, int reg, Occurrences regs) {
+		if (regs.uses[reg] == 0) return def;
+		if (regs.firstUse[reg] <= def || block[regs.lastUse[reg]] != block[def]) return -1;
+		return regs.lastUse[reg];
+	}
+
+	// Whether one of the stores, in order, is between the two instructions
+	private static boolean storedBetween(List<Integer> stores, int from, int to) {
+		if (stores == null) return false;
+
+		int lo = 0, hi = stores.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (stores.get(mid) <= from) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo < stores.size() && stores.get(lo) < to;
+	}
+
+	// Whether the home register was read or written after the definition and
+	// before the store, or a block starts in between
+	private boolean homeTouched(Integer lastTouched, int def, int store) {
+		if (block[def] != block[store]) return true;
+		return lastTouched != null && lastTouched > def;
+	}
+
+	// Where the registers of a bank are defined and read, by the instructions
+	// not removed when it is made
+	private final class Occurrences {
+		final int[] defs;		// Number of definitions
+		final int[] lastDef;
+		final int[] uses;		// Number of instructions reading it
+		final int[] firstUse;
+		final int[] lastUse;
+
+		Occurrences(boolean isFloat) {
+			int n = isFloat ? floatVirtuals : intVirtuals;
+			defs = new int[n];
+			lastDef = new int[n];
+			uses = new int[n];
+			firstUse = new int[n];
+			lastUse = new int[n];
+
+			for (int i = 0; i < code.length; i++) {
+				if (removed[i]) continue;
+
+				int[] k = kinds[i];
+				for (int j = 0; j < 3; j++) {
+					if (k[j] == NONE || isFloat(k[j]) != isFloat) continue;
+
+					int reg = get(code[i], j);
+					if (isDef(k[j])) {
+						defs[reg]++;
+						lastDef[reg] = i;
+					} else if (uses[reg] == 0) {
+						uses[reg] = 1;
+						firstUse[reg] = i;
+						lastUse[reg] = i;
+					} else if (lastUse[reg] != i) {
+						uses[reg]++;
+						lastUse[reg] = i;
+					}
+				}
+			}
+		}
+
+		// The instruction defining the register, or -1 when there are more
+		int onlyDef(int reg) {
+			return reg < defs.length && defs[reg] == 1 ? lastDef[reg] : -1;
+		}
+
+		// The instruction reading the register, or -1 when there are more
+		int onlyUse(int reg) {
+			return reg < uses.length && uses[reg] == 1 ? lastUse[reg] : -1;
+		}
+	}
+
+	private static void setDef(Instruction instr, int[] k, int reg) {
+		for (int j = 0; j < 3; j++) {
+			if (isDef(k[j])) set(instr, j, reg);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Code
+	 *------------------------------------------------------------------------------*/
+
+	// Kinds of the operands and the number of virtual registers of each bank
+	private void classify() {
+		kinds = new int[code.length][];
+		for (int i = 0; i < code.length; i++) {
+			Instruction instr = code[i];
+			int[] k = Operands.kinds(instr);
+			kinds[i] = k;
+
+			for (int j = 0; j < 3; j++) {
+				if (k[j] == NONE) continue;
+
+				if (isFloat(k[j])) {
+					floatVirtuals = Math.max(floatVirtuals, get(instr, j) + 1);
+				} else {
+					intVirtuals = Math.max(intVirtuals, get(instr, j) + 1);
+				}
+			}
+		}
+	}
+
+	// Store instructions of each address, in order
+	private Map<Integer, List<Integer>> stores() {
+		Map<Integer, List<Integer>> stores = new HashMap<>();
+		for (int i = 0; i < code.length; i++) {
+			OpCode op = code[i].op;
+			if (op == STWi || op == STWf) stores.computeIfAbsent(code[i].o1, addr -> new ArrayList<>()).add(i);
+		}
+		return stores;
+	}
+
+	private int[] blocks() {
+		int[] block = new int[code.length];
+		int b = -1;
+		for (int i = 0; i < code.length; i++) {
+			if (leader[i]) b++;
+			block[i] = b;
+		}
+		return block;
+	}
+
+	private boolean[] leaders() {
+		boolean[] leader = new boolean[code.length + 1];
+		leader[0] = true;
+		for (int i = 0; i < code.length; i++) {
+			OpCode op = code[i].op;
+			if (op == JUMP) {
+				leader[code[i].o1] = true;
+				leader[i + 1] = true;
+			} else if (op == BOTb || op == BOFb) {
+				leader[i + code[i].o2] = true;
+				leader[i + 1] = true;
+			}
+		}
+		return leader;
+	}
+
+	private Instruction[] compact() {
+		int n = code.length;
+		int[] newAddr = new int[n + 1];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			newAddr[i] = count;
+			if (!removed[i]) count++;
+		}
+		newAddr[n] = count;
+
+		Instruction[] out = new Instruction[count];
+		for (int i = 0; i < n; i++) {
+			if (removed[i]) continue;
+
+			Instruction instr = code[i];
+			if (instr.op == JUMP) {
+				instr.o1 = newAddr[instr.o1];
+			} else if (instr.op == BOTb || instr.op == BOFb) {
+				instr.o2 = newAddr[i + instr.o2] - newAddr[i];
+			}
+			out[newAddr[i]] = instr;
+		}
+		return out;
+	}
+
+	// Loads zero into the registers read before being written, the homes
+	// of the variables not initialized and the zeros of the copies
+	private Instruction[] initialize(Instruction[] code) {
+		int[][] kinds = new int[code.length][];
+		for (int i = 0; i < code.length; i++) kinds[i] = Operands.kinds(code[i]);
+
+		List<Instruction> out = new ArrayList<>();
+		if (code.length > 0) {
+			BitSet live = Liveness.liveIn(code, kinds, intVirtuals)[0];
+			for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) {
+				if (r < intVirtuals) {
+					out.add(new Instruction(LDIi, r, 0, 0));
+				} else {
+					out.add(new Instruction(LDIf, r - intVirtuals, Float.floatToIntBits(0.0f), 0));
+				}
+			}
+		}
+
+		int shift = out.size();
+		for (Instruction instr : code) {
+			if (instr.op == JUMP) instr.o1 += shift;
+			out.add(instr);
+		}
+		return out.toArray(new Instruction[0]);
+	}
+
+}
@@ -0,0 +1,257 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static code.Instruction.DATA_MEM_SIZE;
+import static code.Instruction.FLOAT_REGS_COUNT;
+import static code.Instruction.INSTR_MEM_SIZE;
+import static code.Instruction.INT_REGS_COUNT;
+import static code.OpCode.*;
+import static code.Operands.*;
+
+/*
+ * Linear scan register allocation (Poletto and Sarkar, 1999) for the code
+ * made by CodeGen, which takes a new virtual register for every value.
+ *
+ * Live intervals come from a liveness analysis over the instructions, so a
+ * value alive around a loop keeps its register for the whole loop. When more
+ * registers of a bank are alive than the machine has, the interval that ends
+ * last is spilled to a slot in data_mem, right after the variables, and is
+ * loaded before each use and stored after its definition through one of the
+ * scratch registers kept at the top of the bank.
+ */
+final class RegisterAllocator {
+
+	// The last registers of each bank are kept for reloading spilled values.
+	// An instruction reads at most two registers of a bank and writes one,
+	// and the machine reads the operands before writing the result.
+	private static final int SCRATCH_COUNT = 2;
+
+	private final int firstSpillAddr;
+
+	private Instruction[] code;
+	private int[][] kinds;		// Kind of each operand of each instruction
+	private int intVirtuals;	// Virtual registers of each bank. Float ones are
+	private int floatVirtuals;	// numbered after the int ones in the liveness sets
+
+	private int[] start;		// Live interval of each virtual register
+	private int[] end;
+	private int[] location;		// Machine register, or spill slot address
+	private boolean[] spilled;
+
+	RegisterAllocator(int varCount) {
+		this.firstSpillAddr = varCount;
+	}
+
+	Instruction[] allocate(Instruction[] code) {
+		this.code = code;
+		classify();
+		liveIntervals();
+
+		int v = intVirtuals + floatVirtuals;
+		location = new int[v];
+		spilled = new boolean[v];
+		int nextSlot = scan(0, intVirtuals, INT_REGS_COUNT - SCRATCH_COUNT, firstSpillAddr);
+		scan(intVirtuals, v, FLOAT_REGS_COUNT - SCRATCH_COUNT, nextSlot);
+
+		return rewrite();
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Operands
+	 *------------------------------------------------------------------------------*/
+
+	private void classify() {
+		kinds = new int[code.length][];
+		intVirtuals = 0;
+		floatVirtuals = 0;
+
+		for (int i = 0; i < code.length; i++) {
+			Instruction instr = code[i];
+			int[] k = Operands.kinds(instr);
+			kinds[i] = k;
+
+			int[] ops = { instr.o1, instr.o2, instr.o3 };
+			for (int j = 0; j < 3; j++) {
+				if (k[j] == NONE) continue;
+
+				if (isFloat(k[j])) {
+					floatVirtuals = Math.max(floatVirtuals, ops[j] + 1);
+				} else {
+					intVirtuals = Math.max(intVirtuals, ops[j] + 1);
+				}
+			}
+		}
+	}
+
+	// Index of an operand in the liveness sets
+	private int virtual(int kind, int reg) {
+		return Liveness.virtual(kind, reg, intVirtuals);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Liveness
+	 *------------------------------------------------------------------------------*/
+
+	private void liveIntervals() {
+		int n = code.length;
+		BitSet[] liveIn = Liveness.liveIn(code, kinds, intVirtuals);
+
+		// An interval goes from the first to the last instruction where the
+		// register is defined or alive
+		int v = intVirtuals + floatVirtuals;
+		start = new int[v];
+		end = new int[v];
+		for (int r = 0; r < v; r++) {
+			start[r] = Integer.MAX_VALUE;
+			end[r] = -1;
+		}
+		for (int i = 0; i < n; i++) {
+			for (int r = liveIn[i].nextSetBit(0); r >= 0; r = liveIn[i].nextSetBit(r + 1)) {
+				extend(r, i);
+			}
+			for (int j = 0; j < 3; j++) {
+				int k = kinds[i][j];
+				if (k != NONE) extend(virtual(k, get(code[i], j)), i);
+			}
+		}
+	}
+
+	private void extend(int r, int i) {
+		if (i < start[r]) start[r] = i;
+		if (i > end[r]) end[r] = i;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Linear scan
+	 *------------------------------------------------------------------------------*/
+
+	// Allocates the virtual registers in [from, to), returns the next free spill slot
+	private int scan(int from, int to, int regCount, int nextSlot) {
+		List<Integer> intervals = new ArrayList<>();
+		for (int r = from; r < to; r++) {
+			if (end[r] >= 0) intervals.add(r);	// Skips numbers that were never used
+		}
+		intervals.sort((a, b) -> Integer.compare(start[a], start[b]));
+
+		List<Integer> active = new ArrayList<>();		// Sorted by end
+		List<Integer> activeSpills = new ArrayList<>();
+		List<Integer> freeRegs = new ArrayList<>();
+		List<Integer> freeSlots = new ArrayList<>();
+		for (int reg = regCount - 1; reg >= 0; reg--) freeRegs.add(reg);
+
+		for (int r : intervals) {
+			// Intervals ending here are expired, as the operands are read before
+			// the result is written
+			while (!active.isEmpty() && end[active.get(0)] <= start[r]) {
+				freeRegs.add(location[active.remove(0)]);
+			}
+			for (int s = activeSpills.size() - 1; s >= 0; s--) {
+				if (end[activeSpills.get(s)] <= start[r]) {
+					freeSlots.add(location[activeSpills.remove(s)]);
+				}
+			}
+
+			if (!freeRegs.isEmpty()) {
+				location[r] = freeRegs.remove(freeRegs.size() - 1);
+				insertActive(active, r);
+				continue;
+			}
+
+			// No register left, spills whoever lives the longest
+			int victim = active.get(active.size() - 1);
+			if (end[victim] > end[r]) {
+				location[r] = location[victim];
+				active.remove(active.size() - 1);
+				insertActive(active, r);
+			} else {
+				victim = r;
+			}
+
+			spilled[victim] = true;
+			if (!freeSlots.isEmpty()) {
+				location[victim] = freeSlots.remove(freeSlots.size() - 1);
+			} else {
+				if (nextSlot >= DATA_MEM_SIZE) throw new Error("No data memory left for spilled registers! Aborting");
+				location[victim] = nextSlot++;
+			}
+			activeSpills.add(victim);
+		}
+
+		return nextSlot;
+	}
+
+	private void insertActive(List<Integer> active, int r) {
+		int pos = active.size();
+		while (pos > 0 && end[active.get(pos - 1)] > end[r]) pos--;
+		active.add(pos, r);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Rewrite
+	 *------------------------------------------------------------------------------*/
+
+	private Instruction[] rewrite() {
+		int n = code.length;
+		List<Instruction> out = new ArrayList<>();
+		int[] newAddr = new int[n + 1];	// Where the code of each old instruction starts
+		int[] newPos = new int[n];		// Where each old instruction itself went
+
+		for (int i = 0; i < n; i++) {
+			Instruction instr = code[i];
+			newAddr[i] = out.size();
+
+			int[] ops = { instr.o1, instr.o2, instr.o3 };
+			int[] reloaded = { -1, -1 };	// Spilled uses already loaded, per scratch register
+			int[] nextScratch = { 0, 0 };	// Per bank
+			Instruction store = null;
+
+			for (int j = 0; j < 3; j++) {
+				int k = kinds[i][j];
+				if (k == NONE) continue;
+
+				int r = virtual(k, ops[j]);
+				boolean isFloat = isFloat(k);
+				if (!spilled[r]) {
+					ops[j] = location[r];
+					continue;
+				}
+
+				int bank = isFloat ? 1 : 0;
+				int top = (isFloat ? FLOAT_REGS_COUNT : INT_REGS_COUNT) - SCRATCH_COUNT;
+				if (isDef(k)) {
+					ops[j] = top;
+					store = new Instruction(isFloat ? STWf : STWi, location[r], top, 0);
+				} else if (nextScratch[bank] > 0 && reloaded[bank] == r) {
+					ops[j] = top;	// Same register used twice, already loaded
+				} else {
+					int scratch = top + nextScratch[bank]++;
+					out.add(new Instruction(isFloat ? LDWf : LDWi, scratch, location[r], 0));
+					reloaded[bank] = r;
+					ops[j] = scratch;
+				}
+			}
+
+			newPos[i] = out.size();
+			out.add(new Instruction(instr.op, ops[0], ops[1], ops[2]));
+			if (store != null) out.add(store);
+		}
+		newAddr[n] = out.size();
+
+		// Loads and stores moved the code, so the jumps are fixed
+		for (int i = 0; i < n; i++) {
+			Instruction instr = out.get(newPos[i]);
+			if (instr.op == JUMP) {
+				instr.o1 = newAddr[instr.o1];
+			} else if (instr.op == BOTb || instr.op == BOFb) {
+				instr.o2 = newAddr[i + instr.o2] - newPos[i];
+			}
+		}
+
+		if (out.size() > INSTR_MEM_SIZE) throw new Error("Program does not fit in the instruction memory! Aborting");
+		return out.toArray(new Instruction[0]);
+	}
+
+}
@@ -1,36 +1,29 @@
 package code;
 
-public class Word {
+/*
+ * A machine word is kept as a raw int slot. Float32 values live in the slot
+ * through their IEEE 754 bit pattern, so storing or loading a value never
+ * allocates anything.
+ */
+public final class Word {
 
-	private byte[] bytes;
+	private Word() {}
 
 	// Integer value interpreted as uint32
-	public static Word fromInt(int value) {
-		Word word = new Word();
-		word.bytes = new byte[] {
-						(byte)(value >>> 24),
-						(byte)(value >>> 16),
-						(byte)(value >>> 8 ),
-						(byte)(value >>> 0 )
-		          	 };
-		return word;
+	public static int fromInt(int value) {
+		return value;
 	}
-	
-	public static Word fromFloat(float value) {
-		int intBits = Float.floatToIntBits(value);
-		return fromInt(intBits);
+
+	public static int fromFloat(float value) {
+		return Float.floatToRawIntBits(value);
 	}
-	
-	public int toInt() {
-		return ((bytes[0] & 0xFF) << 24) | 
-	           ((bytes[1] & 0xFF) << 16) | 
-	           ((bytes[2] & 0xFF) << 8 ) | 
-	           ((bytes[3] & 0xFF) << 0 );
+
+	public static int toInt(int word) {
+		return word;
 	}
-	
-	public float toFloat() {
-		int intBits = this.toInt();
-		return Float.intBitsToFloat(intBits);
+
+	public static float toFloat(int word) {
+		return Float.intBitsToFloat(word);
 	}
-	
+
 }
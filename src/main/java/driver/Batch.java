@@ -0,0 +1,145 @@
+package driver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import code.InputSource;
+
+/*
+ * Compiles many files in one JVM, on a pool with a thread per core:
+ *
+ *   java Main --batch [-o <dir>] [-O] [-b | -check] <dir|files...>
+ *
+ * A directory stands for the .go files in it. Each file is compiled like
+ * 'Main <file> <flags>', with what it prints written to <dir>/<name>.nstm
+ * (.nstmb with -b), out/ by default, like runall.sh does. What a file prints
+ * to stderr, such as syntax errors, is shown in the order the files were
+ * given, after the name of the file. The exit status is the highest of
+ * the files. Files with the same contents are compiled only once, through
+ * a CompileCache shared by the threads.
+ *
+ * Only the compilers run here: the interpreters and the VM would need the
+ * input of a terminal.
+ */
+public final class Batch {
+
+	private Batch() {}
+
+	public static int run(String[] args, PrintStream err) throws IOException, InterruptedException {
+		Path outDir = Paths.get("out");
+		List<String> flags = new ArrayList<String>();
+		List<Path> files = new ArrayList<Path>();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-o") && i + 1 < args.length) {
+				outDir = Paths.get(args[++i]);
+			} else if (arg.equals("-O") || arg.equals("-c") || arg.equals("-b") || arg.equals("-check")) {
+				flags.add(arg);
+			} else if (arg.startsWith("-")) {
+				err.println("--batch only compiles, " + arg + " is not supported");
+				return 2;
+			} else {
+				addFiles(Paths.get(arg), files);
+			}
+		}
+
+		String extension = flags.contains("-b") ? ".nstmb" : ".nstm";
+		boolean check = flags.contains("-check");
+		if (!check) Files.createDirectories(outDir);
+
+		CompileCache cache = new CompileCache(CompileCache.DEFAULT_CAPACITY);
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		for (Path file : files) {
+			String name = file.getFileName().toString().replaceFirst("\\.go$", "");
+			Path output = check ? null : outDir.resolve(name + extension);
+			results.add(pool.submit(() -> compile(file, flags, output, cache)));
+		}
+		pool.shutdown();
+
+		int status = 0;
+		for (Future<Result> future : results) {
+			try {
+				Result result = future.get();
+				if (result.errors.length > 0) {
+					err.println(result.file + ":");
+					err.write(result.errors);
+				}
+				status = Math.max(status, result.status);
+			} catch (ExecutionException e) {
+				// The output file could not be written
+				err.println(e.getCause());
+				status = Math.max(status, 1);
+			}
+		}
+		err.flush();
+		return status;
+	}
+
+	private static void addFiles(Path path, List<Path> files) throws IOException {
+		if (!Files.isDirectory(path)) {
+			files.add(path);
+			return;
+		}
+
+		List<Path> sources = new ArrayList<Path>();
+		try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.go")) {
+			for (Path file : dir) {
+				sources.add(file);
+			}
+		}
+		Collections.sort(sources);
+		files.addAll(sources);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Files
+	 *------------------------------------------------------------------------------*/
+
+	private static final class Result {
+		final Path file;
+		final int status;
+		final byte[] errors;
+
+		Result(Path file, int status, byte[] errors) {
+			this.file = file;
+			this.status = status;
+			this.errors = errors;
+		}
+	}
+
+	private static Result compile(Path file, List<String> flags, Path output, CompileCache cache) throws IOException {
+		List<String> args = new ArrayList<String>();
+		args.add(file.toString());
+		args.addAll(flags);
+
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		PrintStream err = new PrintStream(errors, true);
+		InputSource in = new InputSource(Channels.newChannel(InputStream.nullInputStream()));
+
+		int status;
+		try (OutputStream stream = output != null ? Files.newOutputStream(output) : OutputStream.nullOutputStream();
+				PrintStream out = new PrintStream(new BufferedOutputStream(stream), false)) {
+			status = Driver.runReporting(args.toArray(new String[0]), in, out, err, cache);
+		}
+		return new Result(file, status, errors.toByteArray());
+	}
+
+}
@@ -0,0 +1,182 @@
+package driver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ast.AST;
+import code.Instruction;
+import tables.FuncTable;
+import tables.StrTable;
+import tables.VarTable;
+
+/*
+ * Keeps the programs compiled by the server or the batch, so an unchanged
+ * source skips the lexer, the parser, the checker and the code generation.
+ *
+ * A program is found by the SHA-256 of the compiler version, the -O flag and
+ * the bytes of the source. It holds the checked and folded AST with its
+ * tables, and the NSTM code once a backend generated it. Nothing in it
+ * changes once it is cached: the backends only read the AST and the tables,
+ * and the ones that read strings at runtime add them to a copy.
+ *
+ * The least recently used programs are dropped when the estimated size of
+ * all of them goes over the capacity. The methods are synchronized, so the
+ * threads of the batch can share one cache.
+ */
+public final class CompileCache {
+
+	// Part of every key, changes when the compiler generates other code
+	static final String VERSION = "gopiler-1.0";
+
+	public static final long DEFAULT_CAPACITY = 64L << 20;	// 64 MiB
+
+	// Rough sizes in bytes on a 64-bit JVM with compressed pointers
+	private static final int NODE_BYTES = 96;	// An AST with its list of children
+	private static final int ENTRY_BYTES = 64;	// A table entry with its index
+	private static final int STRING_BYTES = 48;	// A String without its characters
+	private static final int INSTR_BYTES = 40;	// An Instruction with its slot
+
+	private final long capacity;
+	private final Map<String, Program> programs = new LinkedHashMap<String, Program>(16, 0.75f, true);
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public CompileCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	// The key of a source compiled with or without -O
+	static String key(byte[] source, boolean optimize) {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error("SHA-256 is not available! Aborting");
+		}
+		sha.update(VERSION.getBytes(StandardCharsets.UTF_8));
+		sha.update((byte) (optimize ? 1 : 0));
+		return Base64.getEncoder().encodeToString(sha.digest(source));
+	}
+
+	synchronized Program get(String key) {
+		Program program = programs.get(key);
+		if (program != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return program;
+	}
+
+	synchronized void put(String key, Program program) {
+		program.key = key;
+		program.bytes = estimate(program);
+
+		Program old = programs.put(key, program);
+		if (old != null) bytes -= old.bytes;
+		bytes += program.bytes;
+		evict();
+	}
+
+	// Keeps the code a backend generated for a program, the first one wins
+	synchronized void putCode(Program program, Code code) {
+		if (program.code != null) return;
+		program.code = code;
+
+		// The program may have been dropped while the code was generated
+		if (program.key == null || programs.get(program.key) != program) return;
+		long added = (long) code.program.length * INSTR_BYTES;
+		program.bytes += added;
+		bytes += added;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Program> eldest = programs.values().iterator();
+		while (bytes > capacity && eldest.hasNext()) {
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	public synchronized String toString() {
+		return String.format("Compile cache: %d hits, %d misses, %d evictions, %d programs in %d of %d bytes",
+			hits, misses, evictions, programs.size(), bytes, capacity);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Programs
+	 *------------------------------------------------------------------------------*/
+
+	static final class Program {
+		final AST root;
+		final StrTable st;
+		final VarTable vt;
+		final FuncTable ft;
+		volatile Code code;	// Null until a NSTM backend runs
+
+		// Set by the cache, under its lock
+		private String key;
+		private long bytes;
+
+		Program(AST root, StrTable st, VarTable vt, FuncTable ft) {
+			this.root = root;
+			this.st = st;
+			this.vt = vt;
+			this.ft = ft;
+		}
+	}
+
+	static final class Code {
+		final Instruction[] program;
+		final int removed;	// By the peephole pass, printed on stderr with -c
+
+		Code(Instruction[] program, int removed) {
+			this.program = program;
+			this.removed = removed;
+		}
+	}
+
+	private static long estimate(Program program) {
+		long size = countNodes(program.root) * NODE_BYTES;
+		size += (long) (program.vt.size() + program.ft.size() + program.vt.getSymbols().size()) * ENTRY_BYTES;
+
+		// Each string is kept as written and as printed
+		for (int i = 0; i < program.st.size(); i++) {
+			size += ENTRY_BYTES + 2 * (STRING_BYTES + program.st.get(i).length());
+		}
+
+		Code code = program.code;
+		if (code != null) size += (long) code.program.length * INSTR_BYTES;
+		return size;
+	}
+
+	private static long countNodes(AST node) {
+		long count = 1;
+		for (AST child : node.getChildren()) {
+			count += countNodes(child);
+		}
+		return count;
+	}
+
+}
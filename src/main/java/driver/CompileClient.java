@@ -0,0 +1,102 @@
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * Sends its arguments to the CompileServer, as if they were given to Main,
+ * and prints what comes back. Its stdin is passed on to the program, and it
+ * exits with the status of the request.
+ *
+ *   java driver.CompileClient tests/helloworld.go -c
+ *   java driver.CompileClient --stats
+ *   java driver.CompileClient --stop
+ *
+ * The server info file can be picked with -Dgopiler.server=<file>.
+ */
+public final class CompileClient {
+
+	private CompileClient() {}
+
+	public static void main(String[] args) throws IOException {
+		String custom = System.getProperty("gopiler.server");
+		Path info = custom != null ? Paths.get(custom) : CompileServer.DEFAULT_INFO;
+
+		String[] fields;
+		try {
+			fields = new String(Files.readAllBytes(info), StandardCharsets.UTF_8).trim().split(" ");
+		} catch (NoSuchFileException e) {
+			System.err.println("No compile server running, start one with 'java Main --server'");
+			System.exit(2);
+			return;
+		}
+
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(fields[0]))) {
+			System.exit(request(socket, fields[1], args));
+		} catch (ConnectException e) {
+			System.err.println("The compile server at " + info + " is not answering");
+			System.exit(2);
+		}
+	}
+
+	private static int request(Socket socket, String token, String[] args) throws IOException {
+		DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		request.writeUTF(token);
+		request.writeInt(args.length);
+		for (int i = 0; i < args.length; i++) {
+			// The server runs in another directory, so the file goes with its full path
+			boolean file = i == 0 && !args[i].equals(CompileServer.STOP) && !args[i].equals(CompileServer.STATS);
+			request.writeUTF(file ? Paths.get(args[i]).toAbsolutePath().toString() : args[i]);
+		}
+		request.flush();
+
+		// The program reads stdin as it needs it, and may never read it at all
+		Thread input = new Thread(() -> forward(System.in, socket));
+		input.setDaemon(true);
+		input.start();
+
+		DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		while (true) {
+			int stream = response.readByte();
+			if (stream == CompileServer.EXIT) {
+				System.out.flush();
+				return response.readInt();
+			}
+
+			byte[] bytes = new byte[response.readInt()];
+			response.readFully(bytes);
+			PrintStream out = stream == CompileServer.STDOUT ? System.out : System.err;
+			out.write(bytes);
+			out.flush();
+		}
+	}
+
+	private static void forward(InputStream in, Socket socket) {
+		try {
+			OutputStream out = socket.getOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) >= 0; ) {
+				out.write(buffer, 0, n);
+				out.flush();
+			}
+			socket.shutdownOutput();
+		} catch (IOException e) {
+			// The request ended before its input did
+		}
+	}
+
+}
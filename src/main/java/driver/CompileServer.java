@@ -0,0 +1,261 @@
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import code.InputSource;
+
+/*
+ * Keeps one JVM running and compiles, checks or runs programs for the
+ * CompileClient, so each request skips the JVM start, the class loading and
+ * the ANTLR warm-up, and runs code HotSpot has already compiled. A source
+ * compiled before is taken from its CompileCache instead.
+ *
+ * The server listens on a loopback port and writes the port and a random
+ * token to the info file, readable only by its owner. A client must send
+ * the token first, so only that user can use the server.
+ *
+ * Protocol, in the formats of DataOutputStream:
+ *  - the client sends the token (UTF), the number of arguments (int) and
+ *    each argument (UTF), the same ones Main takes. After that, everything
+ *    it sends is the program's stdin;
+ *  - the server answers with frames: a byte with the stream, 1 for stdout
+ *    and 2 for stderr, the length (int) and the bytes, and finally a 0
+ *    byte followed by the exit status (int).
+ * The argument "--stop" stops the server, and "--stats" prints the counters
+ * of its CompileCache.
+ *
+ * Requests are served at the same time, like the files of a Batch, on a pool
+ * with a thread per core; the compiler keeps no static state and the
+ * CompileCache is shared under its lock. A request still running after the
+ * time limit, 60 seconds unless
+ * -Dgopiler.timeout=<seconds> says otherwise (0 for none), is interrupted:
+ * its program stops at the next loop iteration, and a read waiting for the
+ * client ends, so the next requests are not held up.
+ */
+public final class CompileServer {
+
+	public static final Path DEFAULT_INFO = Paths.get(System.getProperty("user.home"), ".gopiler-server");
+
+	static final String STOP = "--stop";
+	static final String STATS = "--stats";
+	static final int EXIT = 0;
+	static final int STDOUT = 1;
+	static final int STDERR = 2;
+
+	private static final long DEFAULT_TIMEOUT = 60;	// Seconds
+
+	private final Path info;
+	private final String token;
+	private final long timeout = Long.getLong("gopiler.timeout", DEFAULT_TIMEOUT);
+	private final CompileCache cache = new CompileCache(CompileCache.DEFAULT_CAPACITY);
+	private final ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+	private ServerSocket server;
+	private volatile boolean stopped;
+
+	public CompileServer(Path info) {
+		this.info = info;
+
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		this.token = Base64.getEncoder().encodeToString(bytes);
+	}
+
+	public void serve() throws IOException, InterruptedException {
+		try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			this.server = server;
+			writeInfo(server.getLocalPort());
+			System.out.printf("Compile server listening on port %d\n", server.getLocalPort());
+
+			while (!stopped) {
+				try {
+					workers.execute(new Request(server.accept()));
+				} catch (IOException e) {
+					// Closed by --stop, otherwise the next client is still served
+					if (!stopped) System.err.println("Accept failed: " + e.getMessage());
+				}
+			}
+		} finally {
+			Files.deleteIfExists(info);
+
+			// The requests still running get the time limit to finish
+			workers.shutdown();
+			if (!workers.awaitTermination(timeout > 0 ? timeout : 1, TimeUnit.SECONDS)) workers.shutdownNow();
+			watchdog.shutdownNow();
+		}
+	}
+
+	// The file is created only readable by the owner, before the token goes in
+	private void writeInfo(int port) throws IOException {
+		Files.deleteIfExists(info);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(info, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			Files.createFile(info);
+		}
+		Files.write(info, (port + " " + token + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Requests
+	 *------------------------------------------------------------------------------*/
+
+	private void serve(Socket client) throws IOException {
+		DataInputStream request = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+		DataOutputStream response = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+
+		byte[] sent = request.readUTF().getBytes(StandardCharsets.UTF_8);
+		if (!MessageDigest.isEqual(sent, token.getBytes(StandardCharsets.UTF_8))) return;
+
+		String[] args = new String[request.readInt()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = request.readUTF();
+		}
+
+		if (args.length > 0 && args[0].equals(STOP)) {
+			stopped = true;
+			exit(response, 0);
+			server.close();
+			return;
+		}
+
+		// The stderr frames flush stdout first, so both keep their order
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FrameStream(response, STDOUT, null)), false);
+		PrintStream err = new PrintStream(new FrameStream(response, STDERR, out), true);
+
+		int status = 0;
+		if (args.length > 0 && args[0].equals(STATS)) {
+			out.println(cache);
+		} else {
+			// The program may close its input, which must not close the socket
+			InputSource in = new InputSource(Channels.newChannel(new Unclosable(request)));
+			status = Driver.runReporting(args, in, out, err, cache);
+		}
+		out.flush();
+		err.flush();
+		exit(response, status);
+	}
+
+	// Serves one client on a worker thread, under the time limit
+	private final class Request implements Runnable {
+		private final Socket client;
+		private Thread worker;	// While the request runs, guarded by this
+
+		Request(Socket client) {
+			this.client = client;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				worker = Thread.currentThread();
+			}
+			ScheduledFuture<?> timer = timeout > 0 ? watchdog.schedule(this::timeOut, timeout, TimeUnit.SECONDS) : null;
+
+			try (Socket socket = client) {
+				serve(socket);
+			} catch (IOException | UncheckedIOException e) {
+				// The client went away, the next one is still served
+				System.err.println("Request failed: " + e.getMessage());
+			} finally {
+				if (timer != null) timer.cancel(false);
+				synchronized (this) {
+					worker = null;
+				}
+				// An interrupt that came too late must not stop the next request
+				Thread.interrupted();
+			}
+		}
+
+		private synchronized void timeOut() {
+			if (worker == null) return;
+
+			worker.interrupt();
+			try {
+				client.shutdownInput();
+			} catch (IOException e) {
+				// The client already closed it
+			}
+		}
+	}
+
+	private static void exit(DataOutputStream response, int status) throws IOException {
+		response.writeByte(EXIT);
+		response.writeInt(status);
+		response.flush();
+	}
+
+	// Sends each write as a frame of the given stream. A PrintStream hides
+	// an IOException, so the unchecked one stops a program whose client left.
+	private static final class FrameStream extends OutputStream {
+		private final DataOutputStream response;
+		private final int stream;
+		private final Flushable before;
+
+		FrameStream(DataOutputStream response, int stream, Flushable before) {
+			this.response = response;
+			this.stream = stream;
+			this.before = before;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return;
+			if (before != null) before.flush();
+
+			try {
+				response.writeByte(stream);
+				response.writeInt(len);
+				response.write(b, off, len);
+				response.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private static final class Unclosable extends FilterInputStream {
+		Unclosable(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+			// The socket is closed with the request
+		}
+	}
+
+}
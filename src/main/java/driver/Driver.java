@@ -0,0 +1,207 @@
+package driver;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import ast.ConstantFolder;
+import ast.LoopUnroller;
+import checker.SemanticChecker;
+import checker.SemanticException;
+import code.BytecodeWriter;
+import code.CodeGen;
+import code.InputSource;
+import code.Interpreter;
+import code.MappedProgram;
+import code.Memory;
+import code.NstmVM;
+import code.OutputSink;
+import exec.TreeInterpreter;
+import ir.PassManager;
+import jit.CodeTooLargeException;
+import jit.JitCompiler;
+import jit.JitProgram;
+import parser.GoLexer;
+import parser.GoParser;
+
+/*
+ * Compiles and runs one program the way the command line asks, reading and
+ * printing only through the streams it is given. Main runs it once with
+ * stdin and stdout, the CompileServer once for each client.
+ *
+ * The lexer and parser keep their DFA caches in static fields of the
+ * generated classes, so every program compiled in the same JVM reuses
+ * what the ones before it built. The server and the batch also share a
+ * CompileCache, so a source they already compiled is not compiled again.
+ */
+public final class Driver {
+
+	private Driver() {}
+
+	// Returns the exit status, 1 after a semantic error
+	public static int run(String[] args, InputSource in, PrintStream out, PrintStream err) throws IOException {
+		return run(args, in, out, err, null);
+	}
+
+	// Takes the checked program and its code from the cache, when not null,
+	// if the same source was compiled before, and caches the ones it compiles
+	public static int run(String[] args, InputSource in, PrintStream out, PrintStream err,
+			CompileCache cache) throws IOException {
+		// The backend flag and -O, in any order
+		String flag = "-c";
+		boolean optimize = false;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-O")) {
+				optimize = true;
+			} else {
+				flag = args[i];
+			}
+		}
+
+		// Runs a program previously compiled with the -b flag, skipping the compiler
+		if(flag.equals("-run")) {
+			NstmVM vm = new NstmVM(MappedProgram.load(Paths.get(args[0])));
+			vm.run(in, new OutputSink(out, StandardCharsets.UTF_8), err);
+			return 0;
+		}
+
+		byte[] source = Files.readAllBytes(Paths.get(args[0]));
+		String key = cache != null ? CompileCache.key(source, optimize) : null;
+		CompileCache.Program program = cache != null ? cache.get(key) : null;
+
+		if (program == null) {
+			CharStream input = CharStreams.fromString(new String(source, StandardCharsets.UTF_8), args[0]);
+
+			GoLexer lexer = new GoLexer(input);
+			lexer.removeErrorListeners();
+			lexer.addErrorListener(new ErrorPrinter(err));
+
+			CommonTokenStream tokens = new CommonTokenStream(lexer);
+
+			GoParser parser = new GoParser(tokens);
+			parser.removeErrorListeners();
+			parser.addErrorListener(new ErrorPrinter(err));
+
+			ParseTree tree = parser.program();
+
+			if (parser.getNumberOfSyntaxErrors() != 0) {
+				return 0;
+			}
+
+			SemanticChecker checker = new SemanticChecker();
+			try {
+				checker.visit(tree);
+			} catch (SemanticException e) {
+				out.print(e.getMessage());
+				return 1;
+			}
+
+			// Only checks the program, the exit status tells whether it is valid
+			if (flag.equals("-check")) {
+				return 0;
+			}
+
+			// Folds the constant expressions once, before any backend runs them
+			new ConstantFolder(checker.st).fold(checker.root);
+
+			// Unrolls the counted loops for every backend with -O
+			if (optimize) {
+				new LoopUnroller(checker.st).unroll(checker.root);
+			}
+
+			program = new CompileCache.Program(checker.root, checker.st, checker.vt, checker.ft);
+			if (cache != null) cache.put(key, program);
+		} else if (flag.equals("-check")) {
+			return 0;
+		}
+
+		if(flag.equals("-i")){
+			Interpreter interpreter = new Interpreter(program.st, program.vt, program.ft,
+				Memory.onHeap(program.vt), in, new OutputSink(out));
+			interpreter.execute(program.root);
+		} else if(flag.equals("-i2")) {
+			TreeInterpreter interpreter = new TreeInterpreter(program.st, program.vt, program.ft);
+			interpreter.execute(program.root, in, new OutputSink(out));
+		} else if(flag.equals("-jit")) {
+			JitCompiler jit = new JitCompiler(program.st, program.vt, program.ft);
+			JitProgram jitted;
+			try {
+				jitted = jit.compile(program.root);
+			} catch (CodeTooLargeException e) {
+				jitted = null;
+			}
+
+			if (jitted != null) {
+				jitted.run(in, new OutputSink(out));
+			} else {
+				// A function too large for a JVM method runs in the tree interpreter
+				TreeInterpreter interpreter = new TreeInterpreter(program.st, program.vt, program.ft);
+				interpreter.execute(program.root, in, new OutputSink(out));
+			}
+		} else {
+			// The NSTM backends go through the SSA IR with -O
+			PassManager passes = optimize ? PassManager.standard() : null;
+			CodeGen codeGen = new CodeGen(program.st, program.vt, passes);
+
+			CompileCache.Code code = program.code;
+			if (code == null) {
+				code = new CompileCache.Code(codeGen.generate(program.root), codeGen.removedCount());
+				if (cache != null) cache.putCode(program, code);
+			}
+
+			if(flag.equals("-b")) {
+				BytecodeWriter.write(code.program, program.st, out);
+			} else if(flag.equals("-vm")) {
+				NstmVM vm = new NstmVM(code.program, program.st);
+				vm.run(in, new OutputSink(out, StandardCharsets.UTF_8), err);
+			} else {
+				codeGen.print(code.program, out);
+
+				// On stderr, so the output stays a program the simulator reads as it is
+				err.printf("peephole: removed %d instructions\n", code.removed);
+			}
+		}
+		out.flush();
+		return 0;
+	}
+
+	// Like run, but an exception is printed the way the JVM prints one
+	// leaving main, and the status is 1
+	static int runReporting(String[] args, InputSource in, PrintStream out, PrintStream err, CompileCache cache) {
+		try {
+			return run(args, in, out, err, cache);
+		} catch (Exception | Error e) {
+			out.flush();
+			err.print("Exception in thread \"main\" ");
+			e.printStackTrace(err);
+			return 1;
+		}
+	}
+
+	// Prints the lexer and parser errors like ANTLR's ConsoleErrorListener,
+	// but to the given stream instead of System.err
+	private static final class ErrorPrinter extends BaseErrorListener {
+		private final PrintStream err;
+
+		ErrorPrinter(PrintStream err) {
+			this.err = err;
+		}
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+				int line, int charPositionInLine, String msg, RecognitionException e) {
+			err.println("line " + line + ":" + charPositionInLine + " " + msg);
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package exec;
+
+import code.InputSource;
+import code.Memory;
+import code.OutputSink;
+import tables.StrTable;
+
+// State shared by the nodes of a program while it runs
+final class ExecContext {
+
+	final Memory memory;
+	final StrTable st;
+	final InputSource in;
+	final OutputSink out;
+
+	ExecContext(Memory memory, StrTable st, InputSource in, OutputSink out) {
+		this.memory = memory;
+		this.st = st;
+		this.in = in;
+		this.out = out;
+	}
+
+	// The output is flushed before reading, so the prompt shows up
+	void prompt(String text) {
+		out.writeString(text);
+		out.flush();
+	}
+
+}
@@ -0,0 +1,8 @@
+package exec;
+
+// Expression producing a float32
+public abstract class FloatNode extends Node {
+
+	public abstract float executeFloat();
+
+}
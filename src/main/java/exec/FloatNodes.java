@@ -0,0 +1,154 @@
+package exec;
+
+import code.Memory;
+
+// Expressions producing float32s
+final class FloatNodes {
+
+	private FloatNodes() {}
+
+	/*------------------------------------------------------------------------------*
+	 *	Values
+	 *------------------------------------------------------------------------------*/
+
+	static final class Constant extends FloatNode {
+		private final float value;
+
+		Constant(float value) {
+			this.value = value;
+		}
+
+		@Override
+		public float executeFloat() {
+			return value;
+		}
+	}
+
+	// Checks the address on its first execution, then replaces itself by a
+	// VarUse, which keeps the slot and reads it without checks
+	static final class UninitializedVarUse extends FloatNode {
+		private final Memory memory;
+		private final int addr;
+
+		UninitializedVarUse(Memory memory, int addr) {
+			this.memory = memory;
+			this.addr = addr;
+		}
+
+		@Override
+		public float executeFloat() {
+			memory.checkAddress(addr);
+			return replace(new VarUse(memory, addr)).executeFloat();
+		}
+	}
+
+	static final class VarUse extends FloatNode {
+		private final Memory memory;
+		private final int addr;
+
+		VarUse(Memory memory, int addr) {
+			this.memory = memory;
+			this.addr = addr;
+		}
+
+		@Override
+		public float executeFloat() {
+			return memory.getFloat(addr);
+		}
+	}
+
+	static final class Call extends FloatNode {
+		private final Function function;
+		private final StmtNode args;
+
+		Call(Function function, StmtNode args) {
+			this.function = function;
+			this.args = adopt(args);
+		}
+
+		@Override
+		public float executeFloat() {
+			args.execute();
+			function.floatResult = 0;	// Kept when the body ends without a return
+			function.body.execute();
+			function.returning = false;
+			return function.floatResult;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Arithmetic operations
+	 *------------------------------------------------------------------------------*/
+
+	// Base for the operations with two float operands
+	abstract static class Binary extends FloatNode {
+		FloatNode l, r;
+
+		Binary(FloatNode l, FloatNode r) {
+			this.l = adopt(l);
+			this.r = adopt(r);
+		}
+
+		@Override
+		final void replaceChild(Node oldChild, Node newChild) {
+			if (l == oldChild) l = (FloatNode) newChild;
+			if (r == oldChild) r = (FloatNode) newChild;
+		}
+	}
+
+	static final class Add extends Binary {
+		Add(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public float executeFloat() {
+			return l.executeFloat() + r.executeFloat();
+		}
+	}
+
+	static final class Sub extends Binary {
+		Sub(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public float executeFloat() {
+			return l.executeFloat() - r.executeFloat();
+		}
+	}
+
+	static final class Mul extends Binary {
+		Mul(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public float executeFloat() {
+			return l.executeFloat() * r.executeFloat();
+		}
+	}
+
+	static final class Div extends Binary {
+		Div(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public float executeFloat() {
+			return l.executeFloat() / r.executeFloat();
+		}
+	}
+
+	static final class Mod extends Binary {
+		Mod(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public float executeFloat() {
+			return l.executeFloat() % r.executeFloat();
+		}
+	}
+
+}
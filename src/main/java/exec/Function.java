@@ -0,0 +1,19 @@
+package exec;
+
+// A declared function. Like in the AST interpreter its vars are not saved
+// between recursive calls, so each function has a single slot to hold the
+// value of its return.
+final class Function {
+
+	final String name;
+	StmtNode body;
+
+	int intResult;
+	float floatResult;
+	boolean returning;	// From the return executed until the call ends
+
+	Function(String name) {
+		this.name = name;
+	}
+
+}
@@ -0,0 +1,9 @@
+package exec;
+
+// Expression producing an int. Bools (0 or 1) and strings (index in the
+// string table) are also represented as ints.
+public abstract class IntNode extends Node {
+
+	public abstract int executeInt();
+
+}
@@ -0,0 +1,597 @@
+package exec;
+
+import ast.NodeKind;
+import code.Memory;
+import tables.StrTable;
+import typing.Type;
+
+// Expressions producing ints, bools and strings
+final class IntNodes {
+
+	private IntNodes() {}
+
+	/*------------------------------------------------------------------------------*
+	 *	Values
+	 *------------------------------------------------------------------------------*/
+
+	static final class Constant extends IntNode {
+		final int value;
+
+		Constant(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int executeInt() {
+			return value;
+		}
+	}
+
+	// Checks the address on its first execution, then replaces itself by a
+	// VarUse, which keeps the slot and reads it without checks
+	static final class UninitializedVarUse extends IntNode {
+		private final Memory memory;
+		private final int addr;
+
+		UninitializedVarUse(Memory memory, int addr) {
+			this.memory = memory;
+			this.addr = addr;
+		}
+
+		@Override
+		public int executeInt() {
+			memory.checkAddress(addr);
+			return replace(new VarUse(memory, addr)).executeInt();
+		}
+	}
+
+	static final class VarUse extends IntNode {
+		final Memory memory;
+		final int addr;
+
+		VarUse(Memory memory, int addr) {
+			this.memory = memory;
+			this.addr = addr;
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr);
+		}
+	}
+
+	static final class Call extends IntNode {
+		private final Function function;
+		private final StmtNode args;
+
+		Call(Function function, StmtNode args) {
+			this.function = function;
+			this.args = adopt(args);
+		}
+
+		@Override
+		public int executeInt() {
+			args.execute();
+			function.intResult = 0;	// Kept when the body ends without a return
+			function.body.execute();
+			function.returning = false;
+			return function.intResult;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Arithmetic operations
+	 *------------------------------------------------------------------------------*/
+
+	// Base for the operations with two int operands
+	abstract static class Binary extends IntNode {
+		IntNode l, r;
+
+		Binary(IntNode l, IntNode r) {
+			this.l = adopt(l);
+			this.r = adopt(r);
+		}
+
+		@Override
+		final void replaceChild(Node oldChild, Node newChild) {
+			if (l == oldChild) l = (IntNode) newChild;
+			if (r == oldChild) r = (IntNode) newChild;
+		}
+	}
+
+	static final class Add extends Binary {
+		Add(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() + r.executeInt();
+		}
+	}
+
+	static final class Sub extends Binary {
+		Sub(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() - r.executeInt();
+		}
+	}
+
+	static final class Mul extends Binary {
+		Mul(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() * r.executeInt();
+		}
+	}
+
+	static final class Div extends Binary {
+		Div(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() / r.executeInt();
+		}
+	}
+
+	static final class Mod extends Binary {
+		Mod(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() % r.executeInt();
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Int and bool comparisons
+	 *------------------------------------------------------------------------------*/
+
+	static final class Equals extends Binary {
+		Equals(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() == r.executeInt() ? 1 : 0;
+		}
+	}
+
+	static final class NotEquals extends Binary {
+		NotEquals(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() != r.executeInt() ? 1 : 0;
+		}
+	}
+
+	static final class Less extends Binary {
+		Less(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() < r.executeInt() ? 1 : 0;
+		}
+	}
+
+	static final class LessOrEquals extends Binary {
+		LessOrEquals(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() <= r.executeInt() ? 1 : 0;
+		}
+	}
+
+	static final class Greater extends Binary {
+		Greater(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() > r.executeInt() ? 1 : 0;
+		}
+	}
+
+	static final class GreaterOrEquals extends Binary {
+		GreaterOrEquals(IntNode l, IntNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeInt() >= r.executeInt() ? 1 : 0;
+		}
+	}
+
+	// Comparisons of a variable with a constant, the usual loop condition,
+	// read the variable straight from memory
+	abstract static class VarConstCompare extends IntNode {
+		final Memory memory;
+		final int addr;
+		final int value;
+
+		VarConstCompare(Memory memory, int addr, int value) {
+			this.memory = memory;
+			this.addr = addr;
+			this.value = value;
+		}
+	}
+
+	static final class EqualsVarConst extends VarConstCompare {
+		EqualsVarConst(Memory memory, int addr, int value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr) == value ? 1 : 0;
+		}
+	}
+
+	static final class NotEqualsVarConst extends VarConstCompare {
+		NotEqualsVarConst(Memory memory, int addr, int value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr) != value ? 1 : 0;
+		}
+	}
+
+	static final class LessVarConst extends VarConstCompare {
+		LessVarConst(Memory memory, int addr, int value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr) < value ? 1 : 0;
+		}
+	}
+
+	static final class LessOrEqualsVarConst extends VarConstCompare {
+		LessOrEqualsVarConst(Memory memory, int addr, int value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr) <= value ? 1 : 0;
+		}
+	}
+
+	static final class GreaterVarConst extends VarConstCompare {
+		GreaterVarConst(Memory memory, int addr, int value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr) > value ? 1 : 0;
+		}
+	}
+
+	static final class GreaterOrEqualsVarConst extends VarConstCompare {
+		GreaterOrEqualsVarConst(Memory memory, int addr, int value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public int executeInt() {
+			return memory.getInt(addr) >= value ? 1 : 0;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Float comparisons
+	 *------------------------------------------------------------------------------*/
+
+	// Base for the comparisons with two float operands
+	abstract static class FloatCompare extends IntNode {
+		FloatNode l, r;
+
+		FloatCompare(FloatNode l, FloatNode r) {
+			this.l = adopt(l);
+			this.r = adopt(r);
+		}
+
+		@Override
+		final void replaceChild(Node oldChild, Node newChild) {
+			if (l == oldChild) l = (FloatNode) newChild;
+			if (r == oldChild) r = (FloatNode) newChild;
+		}
+	}
+
+	static final class FloatEquals extends FloatCompare {
+		FloatEquals(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeFloat() == r.executeFloat() ? 1 : 0;
+		}
+	}
+
+	static final class FloatNotEquals extends FloatCompare {
+		FloatNotEquals(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeFloat() != r.executeFloat() ? 1 : 0;
+		}
+	}
+
+	static final class FloatLess extends FloatCompare {
+		FloatLess(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeFloat() < r.executeFloat() ? 1 : 0;
+		}
+	}
+
+	static final class FloatLessOrEquals extends FloatCompare {
+		FloatLessOrEquals(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeFloat() <= r.executeFloat() ? 1 : 0;
+		}
+	}
+
+	static final class FloatGreater extends FloatCompare {
+		FloatGreater(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeFloat() > r.executeFloat() ? 1 : 0;
+		}
+	}
+
+	static final class FloatGreaterOrEquals extends FloatCompare {
+		FloatGreaterOrEquals(FloatNode l, FloatNode r) {
+			super(l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return l.executeFloat() >= r.executeFloat() ? 1 : 0;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	String comparisons
+	 *------------------------------------------------------------------------------*/
+
+	// Base for the string comparisons, which compare the strings stored in the
+	// string table at the indexes given by both operands
+	abstract static class StringCompare extends IntNode {
+		private final StrTable st;
+		private IntNode l, r;
+
+		StringCompare(StrTable st, IntNode l, IntNode r) {
+			this.st = st;
+			this.l = adopt(l);
+			this.r = adopt(r);
+		}
+
+		@Override
+		final void replaceChild(Node oldChild, Node newChild) {
+			if (l == oldChild) l = (IntNode) newChild;
+			if (r == oldChild) r = (IntNode) newChild;
+		}
+
+		final int compare() {
+			return st.compareStrings(l.executeInt(), r.executeInt());
+		}
+
+		final boolean equal() {
+			return st.equalStrings(l.executeInt(), r.executeInt());
+		}
+	}
+
+	static final class StringEquals extends StringCompare {
+		StringEquals(StrTable st, IntNode l, IntNode r) {
+			super(st, l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return equal() ? 1 : 0;
+		}
+	}
+
+	static final class StringNotEquals extends StringCompare {
+		StringNotEquals(StrTable st, IntNode l, IntNode r) {
+			super(st, l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return equal() ? 0 : 1;
+		}
+	}
+
+	static final class StringLess extends StringCompare {
+		StringLess(StrTable st, IntNode l, IntNode r) {
+			super(st, l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return compare() < 0 ? 1 : 0;
+		}
+	}
+
+	static final class StringLessOrEquals extends StringCompare {
+		StringLessOrEquals(StrTable st, IntNode l, IntNode r) {
+			super(st, l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return compare() <= 0 ? 1 : 0;
+		}
+	}
+
+	static final class StringGreater extends StringCompare {
+		StringGreater(StrTable st, IntNode l, IntNode r) {
+			super(st, l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return compare() > 0 ? 1 : 0;
+		}
+	}
+
+	static final class StringGreaterOrEquals extends StringCompare {
+		StringGreaterOrEquals(StrTable st, IntNode l, IntNode r) {
+			super(st, l, r);
+		}
+
+		@Override
+		public int executeInt() {
+			return compare() >= 0 ? 1 : 0;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Specialization
+	 *------------------------------------------------------------------------------*/
+
+	// Comparison that doesn't know its operands yet. On its first execution it
+	// replaces itself by the comparison for the operands' type, runs it, and,
+	// once the operands have specialized themselves too, replaces that one by
+	// a var-const comparison when the operands have that shape.
+	static final class UninitializedCompare extends IntNode {
+		private final StrTable st;
+		private final NodeKind op;
+		private final Type type;
+		private Node l, r;
+
+		UninitializedCompare(StrTable st, NodeKind op, Type type, Node l, Node r) {
+			this.st = st;
+			this.op = op;
+			this.type = type;
+			this.l = adopt(l);
+			this.r = adopt(r);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (l == oldChild) l = newChild;
+			if (r == oldChild) r = newChild;
+		}
+
+		@Override
+		public int executeInt() {
+			IntNode typed = replace(typed());
+			int result = typed.executeInt();
+
+			if (typed instanceof Binary) {
+				IntNode varConst = varConst((Binary) typed);
+				if (varConst != null) typed.replace(varConst);
+			}
+			return result;
+		}
+
+		private IntNode typed() {
+			switch (type) {
+				case FLOAT32_TYPE:	return floatCompare((FloatNode) l, (FloatNode) r);
+				case STRING_TYPE:	return stringCompare((IntNode) l, (IntNode) r);
+				default:			return intCompare((IntNode) l, (IntNode) r);
+			}
+		}
+
+		private IntNode intCompare(IntNode l, IntNode r) {
+			switch (op) {
+				case EQUALS_NODE:				return new Equals(l, r);
+				case NOT_EQUALS_NODE:			return new NotEquals(l, r);
+				case LESS_NODE:					return new Less(l, r);
+				case LESS_OR_EQUALS_NODE:		return new LessOrEquals(l, r);
+				case GREATER_NODE:				return new Greater(l, r);
+				case GREATER_OR_EQUALS_NODE:	return new GreaterOrEquals(l, r);
+				default:						throw invalidOp();
+			}
+		}
+
+		private IntNode floatCompare(FloatNode l, FloatNode r) {
+			switch (op) {
+				case EQUALS_NODE:				return new FloatEquals(l, r);
+				case NOT_EQUALS_NODE:			return new FloatNotEquals(l, r);
+				case LESS_NODE:					return new FloatLess(l, r);
+				case LESS_OR_EQUALS_NODE:		return new FloatLessOrEquals(l, r);
+				case GREATER_NODE:				return new FloatGreater(l, r);
+				case GREATER_OR_EQUALS_NODE:	return new FloatGreaterOrEquals(l, r);
+				default:						throw invalidOp();
+			}
+		}
+
+		private IntNode stringCompare(IntNode l, IntNode r) {
+			switch (op) {
+				case EQUALS_NODE:				return new StringEquals(st, l, r);
+				case NOT_EQUALS_NODE:			return new StringNotEquals(st, l, r);
+				case LESS_NODE:					return new StringLess(st, l, r);
+				case LESS_OR_EQUALS_NODE:		return new StringLessOrEquals(st, l, r);
+				case GREATER_NODE:				return new StringGreater(st, l, r);
+				case GREATER_OR_EQUALS_NODE:	return new StringGreaterOrEquals(st, l, r);
+				default:						throw invalidOp();
+			}
+		}
+
+		// Returns null when the operands are not a variable and a constant
+		private IntNode varConst(Binary typed) {
+			if (!(typed.l instanceof VarUse) || !(typed.r instanceof Constant)) return null;
+
+			VarUse var = (VarUse) typed.l;
+			int value = ((Constant) typed.r).value;
+
+			switch (op) {
+				case EQUALS_NODE:				return new EqualsVarConst(var.memory, var.addr, value);
+				case NOT_EQUALS_NODE:			return new NotEqualsVarConst(var.memory, var.addr, value);
+				case LESS_NODE:					return new LessVarConst(var.memory, var.addr, value);
+				case LESS_OR_EQUALS_NODE:		return new LessOrEqualsVarConst(var.memory, var.addr, value);
+				case GREATER_NODE:				return new GreaterVarConst(var.memory, var.addr, value);
+				case GREATER_OR_EQUALS_NODE:	return new GreaterOrEqualsVarConst(var.memory, var.addr, value);
+				default:						throw invalidOp();
+			}
+		}
+
+		private Error invalidOp() {
+			return new Error("Invalid comparison: " + op + "! Aborting");
+		}
+	}
+
+}
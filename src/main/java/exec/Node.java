@@ -0,0 +1,35 @@
+package exec;
+
+/*
+ * Base class of the executable tree built by the TreeCompiler.
+ * Each AST subtree is turned into a node specialized for its operation and
+ * type once, before execution, so running it is a plain chain of calls.
+ *
+ * Nodes can also rewrite themselves while running: a node starts in a
+ * generic (uninitialized) state and, when it first executes, replaces
+ * itself in its parent by a node specialized for what it has seen.
+ */
+public abstract class Node {
+
+	private Node parent;
+
+	// Makes this node the parent of the child, so the child can replace itself later
+	protected final <T extends Node> T adopt(T child) {
+		if (child != null) ((Node) child).parent = this;
+		return child;
+	}
+
+	// Replaces this node by the new one in the parent, and returns the new one
+	protected final <T extends Node> T replace(T newNode) {
+		if (parent == null) throw new Error("Node without a parent can't be replaced! Aborting");
+
+		parent.replaceChild(this, newNode);
+		return parent.adopt(newNode);
+	}
+
+	// Nodes that have children which may replace themselves override this
+	void replaceChild(Node oldChild, Node newChild) {
+		throw new Error(getClass().getSimpleName() + " can't replace its children! Aborting");
+	}
+
+}
@@ -0,0 +1,8 @@
+package exec;
+
+// Statement, executed only for its effects
+public abstract class StmtNode extends Node {
+
+	public abstract void execute();
+
+}
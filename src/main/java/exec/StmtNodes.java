@@ -0,0 +1,629 @@
+package exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import code.Memory;
+import code.OutputSink;
+import code.ProgramInterruptedException;
+import tables.StrTable;
+
+// Statements
+final class StmtNodes {
+
+	private StmtNodes() {}
+
+	/*------------------------------------------------------------------------------*
+	 *	Blocks
+	 *------------------------------------------------------------------------------*/
+
+	static final class Block extends StmtNode {
+		private final StmtNode[] stmts;
+		private final Function exit;	// Function a return inside it ends, null if there is none
+
+		Block(StmtNode[] stmts) {
+			this(stmts, null);
+		}
+
+		Block(StmtNode[] stmts, Function exit) {
+			this.stmts = stmts;
+			this.exit = exit;
+			for (StmtNode stmt : stmts) {
+				adopt(stmt);
+			}
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			for (int i = 0; i < stmts.length; i++) {
+				if (stmts[i] == oldChild) stmts[i] = (StmtNode) newChild;
+			}
+		}
+
+		@Override
+		public void execute() {
+			for (StmtNode stmt : stmts) {
+				stmt.execute();
+				if (exit != null && exit.returning) return;
+			}
+		}
+
+		// Inlines the blocks nested right inside this one, and returns the only
+		// statement left when there is just one
+		StmtNode flatten() {
+			List<StmtNode> flat = new ArrayList<StmtNode>();
+			collect(flat);
+
+			if (flat.size() == 1) return flat.get(0);
+			return new Block(flat.toArray(new StmtNode[flat.size()]), exit);
+		}
+
+		private void collect(List<StmtNode> flat) {
+			for (StmtNode stmt : stmts) {
+				if (stmt instanceof Block) {
+					((Block) stmt).collect(flat);
+				} else {
+					flat.add(stmt);
+				}
+			}
+		}
+	}
+
+	// Evaluates an expression and discards its value, like a function called as a statement
+	static final class IntDiscard extends StmtNode {
+		private IntNode expr;
+
+		IntDiscard(IntNode expr) {
+			this.expr = adopt(expr);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (expr == oldChild) expr = (IntNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			expr.executeInt();
+		}
+	}
+
+	static final class FloatDiscard extends StmtNode {
+		private FloatNode expr;
+
+		FloatDiscard(FloatNode expr) {
+			this.expr = adopt(expr);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (expr == oldChild) expr = (FloatNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			expr.executeFloat();
+		}
+	}
+
+	static final class VoidCall extends StmtNode {
+		private final Function function;
+		private final StmtNode args;
+
+		VoidCall(Function function, StmtNode args) {
+			this.function = function;
+			this.args = adopt(args);
+		}
+
+		@Override
+		public void execute() {
+			args.execute();
+			function.body.execute();
+			function.returning = false;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Assignments
+	 *------------------------------------------------------------------------------*/
+
+	// Base for the assignments of ints, bools and strings
+	abstract static class IntStore extends StmtNode {
+		final Memory memory;
+		final int addr;
+		IntNode value;
+
+		IntStore(Memory memory, int addr, IntNode value) {
+			this.memory = memory;
+			this.addr = addr;
+			this.value = adopt(value);
+		}
+
+		@Override
+		final void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (IntNode) newChild;
+		}
+	}
+
+	static final class IntAssign extends IntStore {
+		IntAssign(Memory memory, int addr, IntNode value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public void execute() {
+			memory.putInt(addr, value.executeInt());
+		}
+	}
+
+	static final class IntPlusAssign extends IntStore {
+		IntPlusAssign(Memory memory, int addr, IntNode value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public void execute() {
+			int number = value.executeInt();
+			memory.putInt(addr, memory.getInt(addr) + number);
+		}
+	}
+
+	static final class IntMinusAssign extends IntStore {
+		IntMinusAssign(Memory memory, int addr, IntNode value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public void execute() {
+			int number = value.executeInt();
+			memory.putInt(addr, memory.getInt(addr) - number);
+		}
+	}
+
+	abstract static class FloatStore extends StmtNode {
+		final Memory memory;
+		final int addr;
+		FloatNode value;
+
+		FloatStore(Memory memory, int addr, FloatNode value) {
+			this.memory = memory;
+			this.addr = addr;
+			this.value = adopt(value);
+		}
+
+		@Override
+		final void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (FloatNode) newChild;
+		}
+	}
+
+	static final class FloatAssign extends FloatStore {
+		FloatAssign(Memory memory, int addr, FloatNode value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public void execute() {
+			memory.putFloat(addr, value.executeFloat());
+		}
+	}
+
+	static final class FloatPlusAssign extends FloatStore {
+		FloatPlusAssign(Memory memory, int addr, FloatNode value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public void execute() {
+			float number = value.executeFloat();
+			memory.putFloat(addr, memory.getFloat(addr) + number);
+		}
+	}
+
+	static final class FloatMinusAssign extends FloatStore {
+		FloatMinusAssign(Memory memory, int addr, FloatNode value) {
+			super(memory, addr, value);
+		}
+
+		@Override
+		public void execute() {
+			float number = value.executeFloat();
+			memory.putFloat(addr, memory.getFloat(addr) - number);
+		}
+	}
+
+	// '++' and '--', with a delta of 1 or -1
+	static final class IntIncrement extends StmtNode {
+		private final Memory memory;
+		private final int addr;
+		private final int delta;
+
+		IntIncrement(Memory memory, int addr, int delta) {
+			this.memory = memory;
+			this.addr = addr;
+			this.delta = delta;
+		}
+
+		@Override
+		public void execute() {
+			memory.putInt(addr, memory.getInt(addr) + delta);
+		}
+	}
+
+	static final class FloatIncrement extends StmtNode {
+		private final Memory memory;
+		private final int addr;
+		private final float delta;
+
+		FloatIncrement(Memory memory, int addr, float delta) {
+			this.memory = memory;
+			this.addr = addr;
+			this.delta = delta;
+		}
+
+		@Override
+		public void execute() {
+			memory.putFloat(addr, memory.getFloat(addr) + delta);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Control flow
+	 *------------------------------------------------------------------------------*/
+
+	static final class If extends StmtNode {
+		private IntNode condition;
+		private final StmtNode thenStmt;
+		private final StmtNode elseStmt;
+
+		If(IntNode condition, StmtNode thenStmt, StmtNode elseStmt) {
+			this.condition = adopt(condition);
+			this.thenStmt = adopt(thenStmt);
+			this.elseStmt = adopt(elseStmt);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (condition == oldChild) condition = (IntNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			if (condition.executeInt() == 1) {
+				thenStmt.execute();
+			} else {
+				elseStmt.execute();
+			}
+		}
+	}
+
+	// Base for the loops, which count their iterations. Once a loop is hot
+	// its body is flattened, so each iteration goes through fewer calls.
+	abstract static class Loop extends StmtNode {
+		static final int HOT_ITERATIONS = 1000;
+
+		IntNode condition;
+		StmtNode body;
+		private final Function exit;	// Function a return in the body ends, null if there is none
+		private long iterations;		// Across every execution of the loop
+
+		Loop(IntNode condition, StmtNode body, Function exit) {
+			this.condition = adopt(condition);
+			this.body = adopt(body);
+			this.exit = exit;
+		}
+
+		// A return in the body also ends the loop
+		final boolean returned() {
+			return exit != null && exit.returning;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (condition == oldChild) condition = (IntNode) newChild;
+		}
+
+		// Also stops the loop if the thread was interrupted
+		final void countIteration() {
+			ProgramInterruptedException.check();
+			if (++iterations == HOT_ITERATIONS && body instanceof Block) {
+				body = adopt(((Block) body).flatten());
+			}
+		}
+	}
+
+	static final class While extends Loop {
+		While(IntNode condition, StmtNode body, Function exit) {
+			super(condition, body, exit);
+		}
+
+		@Override
+		public void execute() {
+			while (condition.executeInt() == 1) {
+				body.execute();
+				if (returned()) return;
+				countIteration();
+			}
+		}
+	}
+
+	static final class InfiniteLoop extends Loop {
+		InfiniteLoop(StmtNode body, Function exit) {
+			super(null, body, exit);
+		}
+
+		@Override
+		public void execute() {
+			while (true) {
+				body.execute();
+				if (returned()) return;
+				countIteration();
+			}
+		}
+	}
+
+	static final class For extends Loop {
+		private final StmtNode init;
+		private final StmtNode step;
+
+		For(StmtNode init, IntNode condition, StmtNode step, StmtNode body, Function exit) {
+			super(condition, body, exit);
+			this.init = adopt(init);
+			this.step = adopt(step);
+		}
+
+		@Override
+		public void execute() {
+			init.execute();
+			while (condition.executeInt() == 1) {
+				body.execute();
+				if (returned()) return;
+				step.execute();
+				countIteration();
+			}
+		}
+	}
+
+	// A return saves its value and marks the function as returning, the
+	// blocks and loops it is in stop until the call ends
+	static final class VoidReturn extends StmtNode {
+		private final Function function;
+
+		VoidReturn(Function function) {
+			this.function = function;
+		}
+
+		@Override
+		public void execute() {
+			function.returning = true;
+		}
+	}
+
+	static final class IntReturn extends StmtNode {
+		private final Function function;
+		private IntNode value;
+
+		IntReturn(Function function, IntNode value) {
+			this.function = function;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (IntNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			function.intResult = value.executeInt();
+			function.returning = true;
+		}
+	}
+
+	static final class FloatReturn extends StmtNode {
+		private final Function function;
+		private FloatNode value;
+
+		FloatReturn(Function function, FloatNode value) {
+			this.function = function;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (FloatNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			function.floatResult = value.executeFloat();
+			function.returning = true;
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Input
+	 *------------------------------------------------------------------------------*/
+
+	static final class ReadInt extends StmtNode {
+		private final ExecContext ctx;
+		private final int addr;
+
+		ReadInt(ExecContext ctx, int addr) {
+			this.ctx = ctx;
+			this.addr = addr;
+		}
+
+		@Override
+		public void execute() {
+			ctx.prompt("read (int): ");
+			ctx.memory.putInt(addr, ctx.in.nextInt());
+		}
+	}
+
+	static final class ReadFloat extends StmtNode {
+		private final ExecContext ctx;
+		private final int addr;
+
+		ReadFloat(ExecContext ctx, int addr) {
+			this.ctx = ctx;
+			this.addr = addr;
+		}
+
+		@Override
+		public void execute() {
+			ctx.prompt("read (float32): ");
+			ctx.memory.putFloat(addr, ctx.in.nextFloat());
+		}
+	}
+
+	static final class ReadBool extends StmtNode {
+		private final ExecContext ctx;
+		private final int addr;
+
+		ReadBool(ExecContext ctx, int addr) {
+			this.ctx = ctx;
+			this.addr = addr;
+		}
+
+		@Override
+		public void execute() {
+			int value;
+			do {
+				ctx.prompt("read (bool - 0 = false, 1 = true): ");
+				value = ctx.in.nextInt();
+			} while (value != 0 && value != 1);
+			ctx.memory.putInt(addr, value);
+		}
+	}
+
+	static final class ReadString extends StmtNode {
+		private final ExecContext ctx;
+		private final int addr;
+
+		ReadString(ExecContext ctx, int addr) {
+			this.ctx = ctx;
+			this.addr = addr;
+		}
+
+		@Override
+		public void execute() {
+			ctx.prompt("read (str): ");
+
+			// Reads a whole line, so sentences with spaces are kept together
+			String s = ctx.in.nextLine();
+
+			ctx.memory.putInt(addr, ctx.st.addString(s));
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Output
+	 *------------------------------------------------------------------------------*/
+
+	// Prints every value followed by a space, then ends the line
+	static final class Output extends StmtNode {
+		private final OutputSink out;
+		private final StmtNode[] writes;
+
+		Output(OutputSink out, StmtNode[] writes) {
+			this.out = out;
+			this.writes = writes;
+			for (StmtNode write : writes) {
+				adopt(write);
+			}
+		}
+
+		@Override
+		public void execute() {
+			for (StmtNode write : writes) {
+				write.execute();
+				out.writeByte(' ');
+			}
+			out.newLine();
+		}
+	}
+
+	static final class WriteInt extends StmtNode {
+		private final OutputSink out;
+		private IntNode value;
+
+		WriteInt(OutputSink out, IntNode value) {
+			this.out = out;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (IntNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			out.writeInt(value.executeInt());
+		}
+	}
+
+	static final class WriteFloat extends StmtNode {
+		private final OutputSink out;
+		private FloatNode value;
+
+		WriteFloat(OutputSink out, FloatNode value) {
+			this.out = out;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (FloatNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			out.writeFloat(value.executeFloat());
+		}
+	}
+
+	static final class WriteBool extends StmtNode {
+		private final OutputSink out;
+		private IntNode value;
+
+		WriteBool(OutputSink out, IntNode value) {
+			this.out = out;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (IntNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			out.writeBool(value.executeInt() != 0);
+		}
+	}
+
+	static final class WriteString extends StmtNode {
+		private final OutputSink out;
+		private final StrTable st;
+		private IntNode value;
+
+		WriteString(OutputSink out, StrTable st, IntNode value) {
+			this.out = out;
+			this.st = st;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) value = (IntNode) newChild;
+		}
+
+		@Override
+		public void execute() {
+			out.writeString(st.getText(value.executeInt()));
+		}
+	}
+
+}
@@ -0,0 +1,442 @@
+package exec;
+
+import java.util.List;
+
+import ast.AST;
+import ast.ASTBaseVisitor;
+import ast.NodeKind;
+import code.Memory;
+import tables.FuncTable;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Turns the AST into the executable tree. Every choice the AST interpreter
+ * makes while running (which operator, which type, which function) is made
+ * here once, by picking the node class, so executing the tree doesn't look
+ * at the AST nor compare operators again.
+ */
+final class TreeCompiler extends ASTBaseVisitor<Node> {
+
+	private final ExecContext ctx;
+	private final Memory memory;
+	private final VarTable vt;
+
+	private final Function[] functions;	// Indexed like the FuncTable
+	private final AST[] functionArgs;		// Args node of each function, null if it has none
+	private Function current;				// Function being compiled, target of its returns
+	private boolean returns;				// A return was compiled in the current statement
+
+	private StmtNode main;
+
+	TreeCompiler(ExecContext ctx, VarTable vt, FuncTable ft) {
+		this.ctx = ctx;
+		this.memory = ctx.memory;
+		this.vt = vt;
+		this.functions = new Function[ft.size()];
+		this.functionArgs = new AST[ft.size()];
+
+		for (int i = 0; i < ft.size(); i++) {
+			functions[i] = new Function(ft.getName(i));
+		}
+	}
+
+	// Compiles the whole program and returns the body of the main function
+	StmtNode compile(AST root) {
+		visit(root);
+		return main;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Helpers
+	 *------------------------------------------------------------------------------*/
+
+	private IntNode intExpr(AST node) {
+		return (IntNode) visit(node);
+	}
+
+	private FloatNode floatExpr(AST node) {
+		return (FloatNode) visit(node);
+	}
+
+	// Expressions used as statements have their value discarded
+	private StmtNode stmt(AST node) {
+		Node n = visit(node);
+		if (n instanceof IntNode) return new StmtNodes.IntDiscard((IntNode) n);
+		if (n instanceof FloatNode) return new StmtNodes.FloatDiscard((FloatNode) n);
+		return (StmtNode) n;
+	}
+
+	private static boolean isFloat(Type t) {
+		return t == Type.FLOAT32_TYPE;
+	}
+
+	private StmtNode assign(Type t, int varIdx, AST expr) {
+		if (isFloat(t)) return new StmtNodes.FloatAssign(memory, varIdx, floatExpr(expr));
+		return new StmtNodes.IntAssign(memory, varIdx, intExpr(expr));
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Var values
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Node visitBoolVal(AST node) {
+		return new IntNodes.Constant(node.intData);
+	}
+
+	@Override
+	protected Node visitIntVal(AST node) {
+		return new IntNodes.Constant(node.intData);
+	}
+
+	@Override
+	protected Node visitFloatVal(AST node) {
+		return new FloatNodes.Constant(node.floatData);
+	}
+
+	@Override
+	protected Node visitStringVal(AST node) {
+		return new IntNodes.Constant(node.intData);
+	}
+
+	@Override
+	protected Node visitVarUse(AST node) {
+		if (isFloat(node.type)) return new FloatNodes.UninitializedVarUse(memory, node.intData);
+		return new IntNodes.UninitializedVarUse(memory, node.intData);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Input and output
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Node visitInput(AST node) {
+		int varIdx = node.getChild(0).intData;
+		Type varType = vt.getType(varIdx);
+
+		switch (varType) {
+			case INT_TYPE:			return new StmtNodes.ReadInt(ctx, varIdx);
+			case FLOAT32_TYPE:		return new StmtNodes.ReadFloat(ctx, varIdx);
+			case BOOL_TYPE:			return new StmtNodes.ReadBool(ctx, varIdx);
+			case STRING_TYPE:		return new StmtNodes.ReadString(ctx, varIdx);
+			case NO_TYPE:
+			default:
+				throw new Error("Invalid input type: " + varType + "! Aborting");
+		}
+	}
+
+	@Override
+	protected Node visitOutput(AST node) {
+		AST expressionList = node.getChild(0);
+		if (expressionList == null) return new StmtNodes.Output(ctx.out, new StmtNode[0]);
+
+		List<AST> expressions = expressionList.getChildren();
+		StmtNode[] writes = new StmtNode[expressions.size()];
+
+		for (int i = 0; i < writes.length; i++) {
+			AST expression = expressions.get(i);
+
+			switch (expression.type) {
+				case INT_TYPE:			writes[i] = new StmtNodes.WriteInt(ctx.out, intExpr(expression));				break;
+				case FLOAT32_TYPE:		writes[i] = new StmtNodes.WriteFloat(ctx.out, floatExpr(expression));			break;
+				case BOOL_TYPE:			writes[i] = new StmtNodes.WriteBool(ctx.out, intExpr(expression));			break;
+				case STRING_TYPE:		writes[i] = new StmtNodes.WriteString(ctx.out, ctx.st, intExpr(expression));	break;
+				case NO_TYPE:
+				default:
+					throw new Error("Invalid output type: " + expression.type + "! Aborting");
+			}
+		}
+		return new StmtNodes.Output(ctx.out, writes);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Relational operations
+	 *------------------------------------------------------------------------------*/
+
+	// Comparisons pick their node when they first run, see IntNodes.UninitializedCompare
+	private Node compare(AST node) {
+		AST l = node.getChild(0), r = node.getChild(1);
+		return new IntNodes.UninitializedCompare(ctx.st, node.kind, l.type, visit(l), visit(r));
+	}
+
+	@Override
+	protected Node visitEquals(AST node) {
+		return compare(node);
+	}
+
+	@Override
+	protected Node visitNotEquals(AST node) {
+		return compare(node);
+	}
+
+	@Override
+	protected Node visitLess(AST node) {
+		return compare(node);
+	}
+
+	@Override
+	protected Node visitLessOrEquals(AST node) {
+		return compare(node);
+	}
+
+	@Override
+	protected Node visitGreater(AST node) {
+		return compare(node);
+	}
+
+	@Override
+	protected Node visitGreaterOrEquals(AST node) {
+		return compare(node);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Arithmetic operations
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Node visitStar(AST node) {
+		AST l = node.getChild(0), r = node.getChild(1);
+		if (isFloat(l.type)) return new FloatNodes.Mul(floatExpr(l), floatExpr(r));
+		return new IntNodes.Mul(intExpr(l), intExpr(r));
+	}
+
+	@Override
+	protected Node visitDiv(AST node) {
+		AST l = node.getChild(0), r = node.getChild(1);
+		if (isFloat(l.type)) return new FloatNodes.Div(floatExpr(l), floatExpr(r));
+		return new IntNodes.Div(intExpr(l), intExpr(r));
+	}
+
+	@Override
+	protected Node visitMod(AST node) {
+		AST l = node.getChild(0), r = node.getChild(1);
+		if (isFloat(l.type)) return new FloatNodes.Mod(floatExpr(l), floatExpr(r));
+		return new IntNodes.Mod(intExpr(l), intExpr(r));
+	}
+
+	@Override
+	protected Node visitPlus(AST node) {
+		AST l = node.getChild(0), r = node.getChild(1);
+		if (isFloat(l.type)) return new FloatNodes.Add(floatExpr(l), floatExpr(r));
+		return new IntNodes.Add(intExpr(l), intExpr(r));
+	}
+
+	@Override
+	protected Node visitMinus(AST node) {
+		AST l = node.getChild(0), r = node.getChild(1);
+		if (isFloat(l.type)) return new FloatNodes.Sub(floatExpr(l), floatExpr(r));
+		return new IntNodes.Sub(intExpr(l), intExpr(r));
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Statements
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Node visitStatementSection(AST node) {
+		List<AST> children = node.getChildren();
+		StmtNode[] stmts = new StmtNode[children.size()];
+
+		boolean outer = returns;
+		returns = false;
+		for (int i = 0; i < stmts.length; i++) {
+			stmts[i] = stmt(children.get(i));
+		}
+		return new StmtNodes.Block(stmts, exit(outer));
+	}
+
+	// The function a statement just compiled can end, null if it has no return.
+	// The enclosing statement gets its flag back, set too if this one returns
+	private Function exit(boolean outer) {
+		Function exit = returns ? current : null;
+		returns |= outer;
+		return exit;
+	}
+
+	@Override
+	protected Node visitReturn(AST node) {
+		returns = true;
+
+		// A return without an expression has nothing to save
+		if (node.getChildren().size() == 0) return new StmtNodes.VoidReturn(current);
+
+		AST expr = node.getChild(0);
+		if (isFloat(expr.type)) return new StmtNodes.FloatReturn(current, floatExpr(expr));
+		return new StmtNodes.IntReturn(current, intExpr(expr));
+	}
+
+	@Override
+	protected Node visitVarDecl(AST node) {
+		// A declaration without a value doesn't execute anything
+		if (node.getChildren().size() == 0) return new StmtNodes.Block(new StmtNode[0]);
+
+		int varIdx = node.intData;
+		return assign(vt.getType(varIdx), varIdx, node.getChild(0));
+	}
+
+	@Override
+	protected Node visitAssign(AST node) {
+		int varIdx = node.getChild(0).intData;
+		return assign(vt.getType(varIdx), varIdx, node.getChild(1));
+	}
+
+	@Override
+	protected Node visitPlusAssign(AST node) {
+		int varIdx = node.getChild(0).intData;
+		AST expr = node.getChild(1);
+
+		if (isFloat(vt.getType(varIdx))) return new StmtNodes.FloatPlusAssign(memory, varIdx, floatExpr(expr));
+		return new StmtNodes.IntPlusAssign(memory, varIdx, intExpr(expr));
+	}
+
+	@Override
+	protected Node visitMinusAssign(AST node) {
+		int varIdx = node.getChild(0).intData;
+		AST expr = node.getChild(1);
+
+		if (isFloat(vt.getType(varIdx))) return new StmtNodes.FloatMinusAssign(memory, varIdx, floatExpr(expr));
+		return new StmtNodes.IntMinusAssign(memory, varIdx, intExpr(expr));
+	}
+
+	@Override
+	protected Node visitPlusPlus(AST node) {
+		AST child = node.getChild(0);
+		if (isFloat(child.type)) return new StmtNodes.FloatIncrement(memory, child.intData, 1);
+		return new StmtNodes.IntIncrement(memory, child.intData, 1);
+	}
+
+	@Override
+	protected Node visitMinusMinus(AST node) {
+		AST child = node.getChild(0);
+		if (isFloat(child.type)) return new StmtNodes.FloatIncrement(memory, child.intData, -1);
+		return new StmtNodes.IntIncrement(memory, child.intData, -1);
+	}
+
+	@Override
+	protected Node visitIf(AST node) {
+		IntNode condition = intExpr(node.getChild(0));
+		StmtNode thenStmt = stmt(node.getChild(1));
+
+		StmtNode elseStmt;
+		if (node.getChildren().size() == 3) {
+			elseStmt = stmt(node.getChild(2));
+		} else {
+			elseStmt = new StmtNodes.Block(new StmtNode[0]);
+		}
+		return new StmtNodes.If(condition, thenStmt, elseStmt);
+	}
+
+	@Override
+	protected Node visitElse(AST node) {
+		return stmt(node.getChild(0));
+	}
+
+	@Override
+	protected Node visitWhile(AST node) {
+		boolean outer = returns;
+		returns = false;
+
+		// Without a condition the loop only ends with a return
+		if (node.getChildren().size() == 1) {
+			StmtNode body = stmt(node.getChild(0));
+			return new StmtNodes.InfiniteLoop(body, exit(outer));
+		}
+
+		IntNode condition = intExpr(node.getChild(0));
+		StmtNode body = stmt(node.getChild(1));
+		return new StmtNodes.While(condition, body, exit(outer));
+	}
+
+	@Override
+	protected Node visitFor(AST node) {
+		StmtNode init = stmt(node.getChild(0));
+		IntNode condition = intExpr(node.getChild(1));
+		StmtNode step = stmt(node.getChild(2));
+
+		boolean outer = returns;
+		returns = false;
+		StmtNode body = stmt(node.getChild(3));
+
+		return new StmtNodes.For(init, condition, step, body, exit(outer));
+	}
+
+	@Override
+	protected Node visitFuncCall(AST node) {
+		int funcIdx = node.intData;
+		Function function = functions[funcIdx];
+		AST argsNode = functionArgs[funcIdx];
+
+		// Binds every value from the expression list to its arg, one after the other
+		StmtNode[] binds = new StmtNode[0];
+		if (argsNode != null) {
+			AST expressionList = node.getChild(0);
+			binds = new StmtNode[argsNode.getChildren().size()];
+
+			for (int i = 0; i < binds.length; i++) {
+				AST arg = argsNode.getChild(i);
+				binds[i] = assign(arg.type, arg.intData, expressionList.getChild(i));
+			}
+		}
+		StmtNode args = new StmtNodes.Block(binds);
+
+		switch (node.type) {
+			case NO_TYPE:		return new StmtNodes.VoidCall(function, args);
+			case FLOAT32_TYPE:	return new FloatNodes.Call(function, args);
+			default:			return new IntNodes.Call(function, args);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Functions
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Node visitProgram(AST node) {
+		return visit(node.getChild(0));
+	}
+
+	@Override
+	protected Node visitFuncList(AST node) {
+		// Args are saved first, so calls can be compiled before the called function's body
+		for (AST child : node.getChildren()) {
+			if (child.kind == NodeKind.FUNC_DECL_NODE && child.getChildren().size() == 2) {
+				functionArgs[child.intData] = child.getChild(0);
+			}
+		}
+
+		for (AST child : node.getChildren()) {
+			visit(child);
+		}
+		return null;
+	}
+
+	@Override
+	protected Node visitFuncMain(AST node) {
+		current = functions[node.intData];
+		main = stmt(node.getChild(0));
+		current.body = main;
+		return null;
+	}
+
+	@Override
+	protected Node visitFuncDecl(AST node) {
+		// The statement section is always the last child
+		AST stmtNode = node.getChild(node.getChildren().size() - 1);
+
+		current = functions[node.intData];
+		current.body = stmt(stmtNode);
+		return null;
+	}
+
+	@Override
+	protected Node visitFuncArgs(AST node) {
+		return null;
+	}
+
+	@Override
+	protected Node visitExpressionList(AST node) {
+		return null;
+	}
+
+}
@@ -0,0 +1,59 @@
+package exec;
+
+import ast.AST;
+import code.InputSource;
+import code.Memory;
+import code.OutputSink;
+import tables.FuncTable;
+import tables.StrTable;
+import tables.VarTable;
+
+/*
+ * Interpreter that compiles the AST into a tree of executable nodes before
+ * running it, instead of visiting the AST. Has the same output as the
+ * code.Interpreter, and the same limits: no arrays, and the recursive calls of
+ * a function share its vars.
+ */
+public final class TreeInterpreter {
+
+	private final StrTable st;
+	private final VarTable vt;
+	private final FuncTable ft;
+	private final Memory memory;
+
+	public TreeInterpreter(StrTable st, VarTable vt, FuncTable ft) {
+		this(st, vt, ft, Memory.onHeap(vt));
+	}
+
+	// The nodes use the var indexes from the VarTable as addresses without
+	// checking them, like the AST interpreter
+	public TreeInterpreter(StrTable st, VarTable vt, FuncTable ft, Memory memory) {
+		if (memory.size() < vt.size()) throw new Error("Memory is smaller than the var table! Aborting");
+
+		this.st = st;
+		this.vt = vt;
+		this.ft = ft;
+		this.memory = memory;
+	}
+
+	public void execute(AST root) {
+		try (InputSource in = InputSource.stdin()) {
+			execute(root, in, new OutputSink(System.out));
+		}
+	}
+
+	public void execute(AST root, InputSource in, OutputSink out) {
+		// Strings read at runtime are added to a copy, the compiler's table stays intact
+		StrTable runSt = new StrTable();
+		runSt.addAll(st);
+
+		try {
+			ExecContext ctx = new ExecContext(memory, runSt, in, out);
+			StmtNode main = new TreeCompiler(ctx, vt, ft).compile(root);
+			main.execute();
+		} finally {
+			out.flush();
+		}
+	}
+
+}
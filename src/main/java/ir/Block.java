@@ -0,0 +1,86 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A basic block: the phis first, then the other instructions and a
+ * terminator at the end. The successors follow the terminator, and the
+ * operands of each phi follow the order of the predecessors.
+ */
+public final class Block {
+	final List<Instr> instrs = new ArrayList<Instr>();
+	final List<Block> preds = new ArrayList<Block>();
+	final List<Block> succs = new ArrayList<Block>();
+	final int id;
+
+	Block(int id) {
+		this.id = id;
+	}
+
+	public List<Instr> getInstrs() {
+		return instrs;
+	}
+
+	public List<Block> getPreds() {
+		return preds;
+	}
+
+	public List<Block> getSuccs() {
+		return succs;
+	}
+
+	public Instr getTerminator() {
+		if (instrs.isEmpty()) return null;
+		Instr last = instrs.get(instrs.size() - 1);
+		return last.op.isTerminator() ? last : null;
+	}
+
+	public List<Instr> getPhis() {
+		List<Instr> phis = new ArrayList<Instr>();
+		for (Instr instr : instrs) {
+			if (instr.op != Op.PHI) break;
+			phis.add(instr);
+		}
+		return phis;
+	}
+
+	void append(Instr instr) {
+		instr.block = this;
+		instrs.add(instr);
+	}
+
+	// Phis go before every other instruction
+	void addPhi(Instr phi) {
+		phi.block = this;
+		instrs.add(getPhis().size(), phi);
+	}
+
+	// Puts an instruction right before the terminator
+	public void insertBeforeTerminator(Instr instr) {
+		instr.block = this;
+		int pos = getTerminator() != null ? instrs.size() - 1 : instrs.size();
+		instrs.add(pos, instr);
+	}
+
+	void addSucc(Block succ) {
+		succs.add(succ);
+		succ.preds.add(this);
+	}
+
+	// Puts 'middle' in the edge from this block to 'succ', keeping the
+	// position of the edge in both lists so the phis stay right
+	Block splitEdge(Block succ, Block middle) {
+		succs.set(succs.indexOf(succ), middle);
+		middle.preds.add(this);
+		succ.preds.set(succ.preds.indexOf(this), middle);
+		middle.succs.add(succ);
+		return middle;
+	}
+
+	@Override
+	public String toString() {
+		return "b" + id;
+	}
+
+}
@@ -0,0 +1,43 @@
+package ir;
+
+import typing.Type;
+
+/*
+ * A constant operand. Bools and string indexes are kept as ints, like in the
+ * AST, and floats keep their exact float value.
+ */
+public final class Const extends Value {
+	public final int intValue;
+	public final float floatValue;
+
+	private Const(Type type, int intValue, float floatValue) {
+		super(type);
+		this.intValue = intValue;
+		this.floatValue = floatValue;
+	}
+
+	public static Const of(Type type, int value) {
+		return new Const(type, value, 0.0f);
+	}
+
+	public static Const of(float value) {
+		return new Const(Type.FLOAT32_TYPE, 0, value);
+	}
+
+	// The value of a variable that was never assigned, like the zeroed data_mem
+	public static Const zero(Type type) {
+		return type == Type.FLOAT32_TYPE ? of(0.0f) : of(type, 0);
+	}
+
+	// Same constant, compared by the bits so 0.0 and -0.0 are different
+	public boolean sameAs(Const other) {
+		return type == other.type && intValue == other.intValue
+			&& Float.floatToRawIntBits(floatValue) == Float.floatToRawIntBits(other.floatValue);
+	}
+
+	@Override
+	public String toString() {
+		return isFloat() ? Float.toString(floatValue) : Integer.toString(intValue);
+	}
+
+}
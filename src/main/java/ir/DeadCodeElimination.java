@@ -0,0 +1,40 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Removes the instructions whose values are never needed. Starting from the
+ * instructions with side effects, marks everything they use, so phis that
+ * only feed each other around a loop are removed as well.
+ */
+public final class DeadCodeElimination implements Pass {
+
+	@Override
+	public void run(Function function) {
+		Set<Instr> live = new HashSet<Instr>();
+		Deque<Instr> work = new ArrayDeque<Instr>();
+
+		for (Block block : function.blocks) {
+			for (Instr instr : block.instrs) {
+				if (instr.op.hasSideEffects() && live.add(instr)) work.add(instr);
+			}
+		}
+
+		while (!work.isEmpty()) {
+			for (Value v : work.poll().operands) {
+				if (v instanceof Instr && live.add((Instr) v)) work.add((Instr) v);
+			}
+		}
+
+		for (Block block : function.blocks) {
+			for (Instr instr : new ArrayList<Instr>(block.instrs)) {
+				if (!live.contains(instr)) instr.remove();
+			}
+		}
+	}
+
+}
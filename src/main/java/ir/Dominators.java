@@ -0,0 +1,84 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The dominator tree of a function, computed with "A Simple, Fast Dominance
+ * Algorithm" (Cooper, Harvey and Kennedy, 2001). A block dominates another
+ * when every path from the entry to the other goes through it.
+ */
+public final class Dominators {
+
+	private final List<Block> order;	// Reverse postorder
+	private final Map<Block, Integer> index = new HashMap<Block, Integer>();
+	private final Map<Block, Block> idom = new HashMap<Block, Block>();
+	private final Map<Block, List<Block>> children = new HashMap<Block, List<Block>>();
+
+	public Dominators(Function function) {
+		order = function.reversePostOrder();
+		for (int i = 0; i < order.size(); i++) {
+			index.put(order.get(i), i);
+			children.put(order.get(i), new ArrayList<Block>());
+		}
+
+		Block entry = function.getEntry();
+		idom.put(entry, entry);
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Block block : order) {
+				if (block == entry) continue;
+
+				Block newIdom = null;
+				for (Block pred : block.preds) {
+					if (!idom.containsKey(pred)) continue;	// Not processed yet
+					newIdom = newIdom == null ? pred : intersect(pred, newIdom);
+				}
+				if (newIdom != idom.get(block)) {
+					idom.put(block, newIdom);
+					changed = true;
+				}
+			}
+		}
+
+		for (Block block : order) {
+			if (block != entry) children.get(idom.get(block)).add(block);
+		}
+	}
+
+	private Block intersect(Block a, Block b) {
+		while (a != b) {
+			while (index.get(a) > index.get(b)) a = idom.get(a);
+			while (index.get(b) > index.get(a)) b = idom.get(b);
+		}
+		return a;
+	}
+
+	// The closest block that dominates this one, null for the entry
+	public Block idom(Block block) {
+		Block d = idom.get(block);
+		return d == block ? null : d;
+	}
+
+	// Blocks whose immediate dominator is this one
+	public List<Block> children(Block block) {
+		return children.get(block);
+	}
+
+	public boolean dominates(Block a, Block b) {
+		while (b != null) {
+			if (a == b) return true;
+			b = idom(b);
+		}
+		return false;
+	}
+
+	public List<Block> reversePostOrder() {
+		return order;
+	}
+
+}
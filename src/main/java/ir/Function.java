@@ -0,0 +1,102 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import typing.Type;
+
+/*
+ * The control-flow graph of a function, with its blocks in SSA form.
+ * The first block is the entry.
+ */
+public final class Function {
+	public final String name;
+	final List<Block> blocks = new ArrayList<Block>();
+	private int nextBlock;
+	private int nextInstr;
+
+	Function(String name) {
+		this.name = name;
+	}
+
+	public List<Block> getBlocks() {
+		return blocks;
+	}
+
+	public Block getEntry() {
+		return blocks.get(0);
+	}
+
+	public Block newBlock() {
+		Block block = new Block(nextBlock++);
+		blocks.add(block);
+		return block;
+	}
+
+	// A new instruction, not yet in any block
+	public Instr newInstr(Op op, Type type, Value... operands) {
+		return new Instr(op, type, nextInstr++, operands);
+	}
+
+	// Puts a new block in the edge between two blocks
+	public Block splitEdge(Block from, Block to) {
+		Block middle = from.splitEdge(to, newBlock());
+		middle.append(newInstr(Op.JUMP, Type.NO_TYPE));
+		return middle;
+	}
+
+	// Blocks in reverse postorder: each block comes before its successors,
+	// except for the back edges of loops
+	public List<Block> reversePostOrder() {
+		List<Block> order = new ArrayList<Block>();
+		postOrder(getEntry(), new HashSet<Block>(), order);
+		Collections.reverse(order);
+		return order;
+	}
+
+	private static void postOrder(Block block, Set<Block> visited, List<Block> order) {
+		if (!visited.add(block)) return;
+		for (Block succ : block.succs) postOrder(succ, visited, order);
+		order.add(block);
+	}
+
+	// Drops the blocks the entry cannot reach, like the code after 'for {}'
+	public void removeUnreachable() {
+		Set<Block> reachable = new HashSet<Block>(reversePostOrder());
+		for (Block block : new ArrayList<Block>(blocks)) {
+			if (reachable.contains(block)) continue;
+
+			for (Block succ : block.succs) {
+				int idx = succ.preds.indexOf(block);
+				succ.preds.remove(idx);
+				for (Instr phi : succ.getPhis()) {
+					phi.operands.get(idx).users.remove(phi);
+					phi.operands.remove(idx);
+				}
+			}
+			for (Instr instr : new ArrayList<Instr>(block.instrs)) {
+				instr.remove();
+			}
+			blocks.remove(block);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("func ").append(name).append('\n');
+		for (Block block : blocks) {
+			sb.append(block).append(": preds ").append(block.preds).append('\n');
+			for (Instr instr : block.instrs) {
+				sb.append('\t').append(instr.describe());
+				if (instr.op == Op.JUMP || instr.op == Op.BRANCH) sb.append(' ').append(block.succs);
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+}
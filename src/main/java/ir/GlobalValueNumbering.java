@@ -0,0 +1,205 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import typing.Type;
+
+/*
+ * Dominator-based value numbering (Briggs, Cooper and Simpson, 1997).
+ *
+ * Walks the dominator tree keeping the expressions computed by the blocks
+ * above, so an instruction computing the same operation over the same values
+ * as one that dominates it is replaced by it. Variables are SSA values, so a
+ * store to a variable makes a new value instead of invalidating the old one,
+ * and reuse works across blocks wherever dominance allows.
+ *
+ * Operations over constants are folded, with the Java int and float
+ * semantics of the interpreter, and a few int identities are simplified.
+ */
+public final class GlobalValueNumbering implements Pass {
+
+	private Dominators dom;
+	private final Map<String, Value> table = new HashMap<String, Value>();
+
+	@Override
+	public void run(Function function) {
+		dom = new Dominators(function);
+		table.clear();
+		visit(function.getEntry());
+	}
+
+	private void visit(Block block) {
+		List<String> added = new ArrayList<String>();
+
+		for (Instr instr : new ArrayList<Instr>(block.instrs)) {
+			if (instr.op == Op.READ || instr.op == Op.WRITE || instr.op.isTerminator()) continue;
+
+			Value simpler = simplify(instr);
+			if (simpler != null) {
+				replace(instr, simpler);
+				continue;
+			}
+
+			String key = key(instr);
+			Value existing = table.get(key);
+			if (existing != null) {
+				replace(instr, existing);
+			} else {
+				table.put(key, instr);
+				added.add(key);
+			}
+		}
+
+		for (Block child : dom.children(block)) {
+			visit(child);
+		}
+
+		// Leaving the block, its expressions don't dominate the next ones
+		for (String key : added) {
+			table.remove(key);
+		}
+	}
+
+	private static void replace(Instr instr, Value value) {
+		instr.replaceAllUsesWith(value);
+		instr.remove();
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Keys
+	 *------------------------------------------------------------------------------*/
+
+	private static String key(Instr instr) {
+		List<String> operands = new ArrayList<String>();
+		for (Value v : instr.operands) {
+			operands.add(name(v));
+		}
+		if (isCommutative(instr.op)) Collections.sort(operands);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(instr.op).append(' ').append(instr.type);
+		// Phis with the same operands are only equal in the same block
+		if (instr.op == Op.PHI) sb.append(' ').append(instr.block);
+		for (String op : operands) {
+			sb.append(' ').append(op);
+		}
+		return sb.toString();
+	}
+
+	private static String name(Value v) {
+		if (v instanceof Instr) return v.toString();
+
+		Const c = (Const) v;
+		return "#" + c.type + ":" + c.intValue + ":" + Float.floatToRawIntBits(c.floatValue);
+	}
+
+	private static boolean isCommutative(Op op) {
+		return op == Op.ADD || op == Op.MUL || op == Op.EQ || op == Op.NE;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Simplifications
+	 *------------------------------------------------------------------------------*/
+
+	// A simpler value computing the same as the instruction, or null
+	private static Value simplify(Instr instr) {
+		if (instr.op == Op.PHI) return simplifyPhi(instr);
+
+		Value l = instr.getOperand(0);
+		Value r = instr.getOperand(1);
+		if (l instanceof Const && r instanceof Const) {
+			return fold(instr.op, (Const) l, (Const) r);
+		}
+		if (instr.type == Type.INT_TYPE) {
+			return simplifyIdentity(instr.op, l, r);
+		}
+		return null;
+	}
+
+	// A phi merging a single value (besides itself) is that value
+	private static Value simplifyPhi(Instr phi) {
+		Value same = null;
+		for (Value v : phi.operands) {
+			if (v == phi || v == same) continue;
+			if (same != null) {
+				if (!(same instanceof Const && v instanceof Const && ((Const) same).sameAs((Const) v))) return null;
+				continue;
+			}
+			same = v;
+		}
+		return same;
+	}
+
+	private static Value fold(Op op, Const l, Const r) {
+		if (l.type == Type.FLOAT32_TYPE) {
+			float a = l.floatValue;
+			float b = r.floatValue;
+			switch (op) {
+				case ADD:	return Const.of(a + b);
+				case SUB:	return Const.of(a - b);
+				case MUL:	return Const.of(a * b);
+				case DIV:	return b != 0.0f ? Const.of(a / b) : null;	// Fails when run
+				case MOD:	return b != 0.0f ? Const.of(a % b) : null;
+				case EQ:	return bool(a == b);
+				case NE:	return bool(a != b);
+				case LT:	return bool(a < b);
+				case LE:	return bool(a <= b);
+				case GT:	return bool(a > b);
+				case GE:	return bool(a >= b);
+				default:	return null;
+			}
+		}
+
+		// Comparing strings needs the table, they are left to the machine
+		if (l.type == Type.STRING_TYPE) return null;
+
+		int a = l.intValue;
+		int b = r.intValue;
+		switch (op) {
+			case ADD:	return Const.of(l.type, a + b);
+			case SUB:	return Const.of(l.type, a - b);
+			case MUL:	return Const.of(l.type, a * b);
+			case DIV:	return b != 0 ? Const.of(l.type, a / b) : null;
+			case MOD:	return b != 0 ? Const.of(l.type, a % b) : null;
+			case EQ:	return bool(a == b);
+			case NE:	return bool(a != b);
+			case LT:	return bool(a < b);
+			case LE:	return bool(a <= b);
+			case GT:	return bool(a > b);
+			case GE:	return bool(a >= b);
+			default:	return null;
+		}
+	}
+
+	private static Value simplifyIdentity(Op op, Value l, Value r) {
+		switch (op) {
+			case ADD:
+				if (isInt(l, 0)) return r;
+				if (isInt(r, 0)) return l;
+				return null;
+			case SUB:
+				return isInt(r, 0) ? l : null;
+			case MUL:
+				if (isInt(l, 1)) return r;
+				if (isInt(r, 1)) return l;
+				return null;
+			case DIV:
+				return isInt(r, 1) ? l : null;
+			default:
+				return null;
+		}
+	}
+
+	private static boolean isInt(Value v, int value) {
+		return v instanceof Const && v.type == Type.INT_TYPE && ((Const) v).intValue == value;
+	}
+
+	private static Const bool(boolean value) {
+		return Const.of(Type.BOOL_TYPE, value ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,482 @@
+package ir;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ast.AST;
+import ast.ASTBaseVisitor;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Lowers the checked AST of the main function into a Function in SSA form,
+ * building the phis while the blocks are made, as in "Simple and Efficient
+ * Construction of Static Single Assignment Form" (Braun et al., 2013).
+ *
+ * Each VarTable entry stops being a memory slot and becomes the value last
+ * written to it in each block. Reading a variable in a block that does not
+ * write it looks for its value in the predecessors, placing a phi where
+ * they meet. A block is sealed once all its predecessors are known, and
+ * the phis asked for before that are only completed then.
+ *
+ * Like the CodeGen, only the main function is supported.
+ */
+public final class IRBuilder extends ASTBaseVisitor<Value> {
+
+	private final VarTable vt;
+	private final Function function = new Function("main");
+	private Block current;
+
+	private final Map<Block, Map<Integer, Value>> currentDef = new HashMap<>();
+	private final Map<Block, Map<Integer, Instr>> incompletePhis = new HashMap<>();
+	private final Set<Block> sealed = new HashSet<>();
+	private final Map<Instr, Value> replaced = new HashMap<>();	// Trivial phis that were removed
+
+	public IRBuilder(VarTable vt) {
+		this.vt = vt;
+	}
+
+	public Function build(AST root) {
+		current = function.newBlock();
+		seal(current);
+		visit(root);
+		emit(Op.HALT, Type.NO_TYPE);
+
+		function.removeUnreachable();
+		return function;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	SSA construction
+	 *------------------------------------------------------------------------------*/
+
+	private void writeVariable(int var, Block block, Value value) {
+		currentDef.computeIfAbsent(block, b -> new HashMap<>()).put(var, value);
+	}
+
+	private Value readVariable(int var, Block block) {
+		Map<Integer, Value> defs = currentDef.get(block);
+		if (defs != null && defs.containsKey(var)) return resolve(defs.get(var));
+		return readVariableRecursive(var, block);
+	}
+
+	private Value readVariableRecursive(int var, Block block) {
+		Type type = vt.getType(var);
+		Value value;
+
+		if (!sealed.contains(block)) {
+			// Not all predecessors are known, the phi is completed when sealing
+			Instr phi = newPhi(block, type);
+			incompletePhis.computeIfAbsent(block, b -> new HashMap<>()).put(var, phi);
+			value = phi;
+		} else if (block.preds.size() == 1) {
+			value = readVariable(var, block.preds.get(0));
+		} else if (block.preds.isEmpty()) {
+			// Never written, reads the zeroed memory
+			value = Const.zero(type);
+		} else {
+			// Writes the phi first, so loops find it instead of looking again
+			Instr phi = newPhi(block, type);
+			writeVariable(var, block, phi);
+			value = addPhiOperands(var, phi);
+		}
+
+		writeVariable(var, block, value);
+		return value;
+	}
+
+	private Instr newPhi(Block block, Type type) {
+		Instr phi = function.newInstr(Op.PHI, type);
+		block.addPhi(phi);
+		return phi;
+	}
+
+	private Value addPhiOperands(int var, Instr phi) {
+		for (Block pred : phi.block.preds) {
+			phi.addOperand(readVariable(var, pred));
+		}
+		return tryRemoveTrivialPhi(phi);
+	}
+
+	// A phi that only merges one value (and itself) is that value
+	private Value tryRemoveTrivialPhi(Instr phi) {
+		Value same = null;
+		for (Value op : phi.operands) {
+			if (op == same || op == phi) continue;
+			if (same != null) return phi;
+			same = op;
+		}
+		if (same == null) same = Const.zero(phi.type);	// Unreachable, or only reads itself
+
+		Set<Instr> users = new HashSet<>(phi.users);
+		users.remove(phi);
+		phi.replaceAllUsesWith(same);
+		phi.remove();
+		replaced.put(phi, same);
+
+		// Removing it may make the phis using it trivial too
+		for (Instr user : users) {
+			if (user.op == Op.PHI && user.block != null) tryRemoveTrivialPhi(user);
+		}
+		return same;
+	}
+
+	private Value resolve(Value value) {
+		while (value instanceof Instr && replaced.containsKey(value)) {
+			value = replaced.get(value);
+		}
+		return value;
+	}
+
+	private void seal(Block block) {
+		Map<Integer, Instr> phis = incompletePhis.remove(block);
+		if (phis != null) {
+			for (Map.Entry<Integer, Instr> e : phis.entrySet()) {
+				addPhiOperands(e.getKey(), e.getValue());
+			}
+		}
+		sealed.add(block);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Emits
+	 *------------------------------------------------------------------------------*/
+
+	private Instr emit(Op op, Type type, Value... operands) {
+		Instr instr = function.newInstr(op, type, operands);
+		current.append(instr);
+		return instr;
+	}
+
+	private void jump(Block target) {
+		emit(Op.JUMP, Type.NO_TYPE);
+		current.addSucc(target);
+	}
+
+	private void branch(Value condition, Block ifTrue, Block ifFalse) {
+		emit(Op.BRANCH, Type.NO_TYPE, condition);
+		current.addSucc(ifTrue);
+		current.addSucc(ifFalse);
+	}
+
+	private Value binary(Op op, Type type, AST node) {
+		Value l = visit(node.getChild(0));
+		Value r = visit(node.getChild(1));
+		return emit(op, type, l, r);
+	}
+
+	// Reads the variable, applies the operation with the value and writes it back
+	private void update(AST var, Op op, Value value) {
+		int addr = var.intData;
+		Value old = readVariable(addr, current);
+		writeVariable(addr, current, emit(op, vt.getType(addr), old, value));
+	}
+
+	private static Const one(Type type) {
+		return type == Type.FLOAT32_TYPE ? Const.of(1.0f) : Const.of(type, 1);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Values
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Value visitBoolVal(AST node) {
+		return Const.of(Type.BOOL_TYPE, node.intData);
+	}
+
+	@Override
+	protected Value visitIntVal(AST node) {
+		return Const.of(Type.INT_TYPE, node.intData);
+	}
+
+	@Override
+	protected Value visitFloatVal(AST node) {
+		return Const.of(node.floatData);
+	}
+
+	@Override
+	protected Value visitStringVal(AST node) {
+		return Const.of(Type.STRING_TYPE, node.intData);
+	}
+
+	@Override
+	protected Value visitVarUse(AST node) {
+		return readVariable(node.intData, current);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	I/O
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Value visitInput(AST node) {
+		AST var = node.getChild(0);
+		writeVariable(var.intData, current, emit(Op.READ, var.type));
+		return null;
+	}
+
+	@Override
+	protected Value visitOutput(AST node) {
+		for (AST expression : node.getChild(0).getChildren()) {
+			emit(Op.WRITE, Type.NO_TYPE, visit(expression));
+		}
+		return null;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Operations
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Value visitEquals(AST node) {
+		return binary(Op.EQ, Type.BOOL_TYPE, node);
+	}
+
+	@Override
+	protected Value visitNotEquals(AST node) {
+		return binary(Op.NE, Type.BOOL_TYPE, node);
+	}
+
+	@Override
+	protected Value visitLess(AST node) {
+		return binary(Op.LT, Type.BOOL_TYPE, node);
+	}
+
+	@Override
+	protected Value visitLessOrEquals(AST node) {
+		return binary(Op.LE, Type.BOOL_TYPE, node);
+	}
+
+	@Override
+	protected Value visitGreater(AST node) {
+		return binary(Op.GT, Type.BOOL_TYPE, node);
+	}
+
+	@Override
+	protected Value visitGreaterOrEquals(AST node) {
+		return binary(Op.GE, Type.BOOL_TYPE, node);
+	}
+
+	@Override
+	protected Value visitStar(AST node) {
+		return binary(Op.MUL, node.type, node);
+	}
+
+	@Override
+	protected Value visitDiv(AST node) {
+		return binary(Op.DIV, node.type, node);
+	}
+
+	@Override
+	protected Value visitMod(AST node) {
+		return binary(Op.MOD, node.type, node);
+	}
+
+	@Override
+	protected Value visitPlus(AST node) {
+		return binary(Op.ADD, node.type, node);
+	}
+
+	@Override
+	protected Value visitMinus(AST node) {
+		return binary(Op.SUB, node.type, node);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Statements
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Value visitStatementSection(AST node) {
+		for (AST child : node.getChildren()) {
+			visit(child);
+		}
+		return null;
+	}
+
+	@Override
+	protected Value visitReturn(AST node) {
+		// Ignored in main, like in the CodeGen
+		return null;
+	}
+
+	@Override
+	protected Value visitVarDecl(AST node) {
+		int addr = node.intData;
+		Value value = node.getChildren().size() > 0
+			? visit(node.getChild(0))
+			: Const.zero(vt.getType(addr));
+		writeVariable(addr, current, value);
+		return null;
+	}
+
+	@Override
+	protected Value visitAssign(AST node) {
+		Value value = visit(node.getChild(1));
+		writeVariable(node.getChild(0).intData, current, value);
+		return null;
+	}
+
+	@Override
+	protected Value visitPlusAssign(AST node) {
+		update(node.getChild(0), Op.ADD, visit(node.getChild(1)));
+		return null;
+	}
+
+	@Override
+	protected Value visitMinusAssign(AST node) {
+		update(node.getChild(0), Op.SUB, visit(node.getChild(1)));
+		return null;
+	}
+
+	@Override
+	protected Value visitPlusPlus(AST node) {
+		AST var = node.getChild(0);
+		update(var, Op.ADD, one(var.type));
+		return null;
+	}
+
+	@Override
+	protected Value visitMinusMinus(AST node) {
+		AST var = node.getChild(0);
+		update(var, Op.SUB, one(var.type));
+		return null;
+	}
+
+	@Override
+	protected Value visitIf(AST node) {
+		Value condition = visit(node.getChild(0));
+		boolean hasElse = node.getChildren().size() == 3;
+
+		Block thenBlock = function.newBlock();
+		Block elseBlock = hasElse ? function.newBlock() : null;
+		Block merge = function.newBlock();
+
+		branch(condition, thenBlock, hasElse ? elseBlock : merge);
+
+		seal(thenBlock);
+		current = thenBlock;
+		visit(node.getChild(1));
+		jump(merge);
+
+		if (hasElse) {
+			seal(elseBlock);
+			current = elseBlock;
+			visit(node.getChild(2));
+			jump(merge);
+		}
+
+		seal(merge);
+		current = merge;
+		return null;
+	}
+
+	@Override
+	protected Value visitElse(AST node) {
+		visit(node.getChild(0));
+		return null;
+	}
+
+	@Override
+	protected Value visitWhile(AST node) {
+		Block header = function.newBlock();
+		Block exit = function.newBlock();
+		jump(header);
+		current = header;
+
+		// Has both the condition and statement section
+		if (node.getChildren().size() == 2) {
+			Block body = function.newBlock();
+			branch(visit(node.getChild(0)), body, exit);
+
+			seal(body);
+			current = body;
+			visit(node.getChild(1));
+		} else {
+			// No condition, the exit is never reached
+			visit(node.getChild(0));
+		}
+
+		jump(header);
+		seal(header);
+		seal(exit);
+		current = exit;
+		return null;
+	}
+
+	@Override
+	protected Value visitFor(AST node) {
+		visit(node.getChild(0));
+
+		Block header = function.newBlock();
+		Block body = function.newBlock();
+		Block exit = function.newBlock();
+		jump(header);
+
+		current = header;
+		branch(visit(node.getChild(1)), body, exit);
+
+		seal(body);
+		current = body;
+		visit(node.getChild(3));
+		visit(node.getChild(2));
+		jump(header);
+
+		seal(header);
+		seal(exit);
+		current = exit;
+		return null;
+	}
+
+	@Override
+	protected Value visitFuncCall(AST node) {
+		throw new Error("Function calls are not supported by the IR! Aborting");
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Functions
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Value visitFuncMain(AST node) {
+		visit(node.getChild(0));
+		return null;
+	}
+
+	@Override
+	protected Value visitFuncDecl(AST node) {
+		return null;
+	}
+
+	@Override
+	protected Value visitFuncArgs(AST node) {
+		return null;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Others
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Value visitExpressionList(AST node) {
+		return null;
+	}
+
+	@Override
+	protected Value visitProgram(AST node) {
+		visit(node.getChild(0));
+		return null;
+	}
+
+	@Override
+	protected Value visitFuncList(AST node) {
+		for (AST child : node.getChildren()) {
+			visit(child);
+		}
+		return null;
+	}
+
+}
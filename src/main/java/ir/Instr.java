@@ -0,0 +1,86 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import typing.Type;
+
+/*
+ * An instruction of a basic block, which is also the value it computes.
+ * Instructions without a result, like WRITE and the terminators, have
+ * NO_TYPE.
+ */
+public final class Instr extends Value {
+	public final Op op;
+	final List<Value> operands = new ArrayList<Value>();
+	Block block;
+	final int id;
+
+	Instr(Op op, Type type, int id, Value... operands) {
+		super(type);
+		this.op = op;
+		this.id = id;
+		for (Value v : operands) addOperand(v);
+	}
+
+	public List<Value> getOperands() {
+		return operands;
+	}
+
+	public Value getOperand(int i) {
+		return operands.get(i);
+	}
+
+	public Block getBlock() {
+		return block;
+	}
+
+	void addOperand(Value v) {
+		operands.add(v);
+		v.users.add(this);
+	}
+
+	public void setOperand(int i, Value v) {
+		operands.get(i).users.remove(this);
+		operands.set(i, v);
+		v.users.add(this);
+	}
+
+	void replaceOperand(Value from, Value to) {
+		for (int i = 0; i < operands.size(); i++) {
+			if (operands.get(i) == from) setOperand(i, to);
+		}
+	}
+
+	// Moves the instruction to the end of another block, before its terminator
+	public void moveTo(Block target) {
+		block.instrs.remove(this);
+		target.insertBeforeTerminator(this);
+	}
+
+	// Takes the instruction out of its block, it must not be used anymore
+	public void remove() {
+		for (Value v : operands) v.users.remove(this);
+		operands.clear();
+		block.instrs.remove(this);
+		block = null;
+	}
+
+	@Override
+	public String toString() {
+		return "%" + id;
+	}
+
+	// The whole instruction, for dumps
+	public String describe() {
+		StringBuilder sb = new StringBuilder();
+		if (type != Type.NO_TYPE) sb.append(this).append(" = ");
+		sb.append(op);
+		if (op == Op.READ || op == Op.WRITE) sb.append('.').append(op == Op.READ ? type : operands.get(0).type);
+		for (int i = 0; i < operands.size(); i++) {
+			sb.append(i == 0 ? " " : ", ").append(operands.get(i));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,108 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A natural loop: the header, which dominates every block of the loop, and
+ * the blocks that reach a back edge to it without going through it.
+ * Every loop found has a preheader, the only block out of the loop that
+ * jumps to the header, where code can run once before the loop.
+ */
+public final class Loop {
+	public final Block header;
+	public final Block preheader;
+	final Set<Block> blocks;
+	final List<Block> latches;	// Blocks with a back edge to the header
+
+	private Loop(Block header, Block preheader, Set<Block> blocks, List<Block> latches) {
+		this.header = header;
+		this.preheader = preheader;
+		this.blocks = blocks;
+		this.latches = latches;
+	}
+
+	public boolean contains(Block block) {
+		return blocks.contains(block);
+	}
+
+	// Defined outside the loop, so it has the same value in every iteration
+	public boolean isInvariant(Value v) {
+		return !(v instanceof Instr) || !contains(((Instr) v).block);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Finding the loops
+	 *------------------------------------------------------------------------------*/
+
+	// The loops of the function, inner loops first. Loops entered from more
+	// than one block are left out.
+	public static List<Loop> find(Function function) {
+		// Making the preheaders changes the graph, so the loops are found again
+		for (Map.Entry<Block, Set<Block>> e : naturalLoops(function).entrySet()) {
+			makePreheader(function, e.getKey(), e.getValue());
+		}
+
+		List<Loop> loops = new ArrayList<Loop>();
+		for (Map.Entry<Block, Set<Block>> e : naturalLoops(function).entrySet()) {
+			Block header = e.getKey();
+			Set<Block> blocks = e.getValue();
+
+			List<Block> outside = new ArrayList<Block>();
+			List<Block> latches = new ArrayList<Block>();
+			for (Block pred : header.preds) {
+				(blocks.contains(pred) ? latches : outside).add(pred);
+			}
+			if (outside.size() != 1 || outside.get(0).succs.size() != 1) continue;
+
+			loops.add(new Loop(header, outside.get(0), blocks, latches));
+		}
+
+		loops.sort((a, b) -> Integer.compare(a.blocks.size(), b.blocks.size()));
+		return loops;
+	}
+
+	// Blocks of the loop of each header, merging the loops of its back edges
+	private static Map<Block, Set<Block>> naturalLoops(Function function) {
+		Dominators dom = new Dominators(function);
+		Map<Block, Set<Block>> loops = new LinkedHashMap<Block, Set<Block>>();
+
+		for (Block block : dom.reversePostOrder()) {
+			for (Block succ : block.succs) {
+				if (!dom.dominates(succ, block)) continue;
+
+				// Back edge, walks up from its source until the header
+				Set<Block> blocks = loops.computeIfAbsent(succ, h -> new HashSet<Block>());
+				blocks.add(succ);
+				Deque<Block> work = new ArrayDeque<Block>();
+				if (blocks.add(block)) work.add(block);
+				while (!work.isEmpty()) {
+					for (Block pred : work.poll().preds) {
+						if (blocks.add(pred)) work.add(pred);
+					}
+				}
+			}
+		}
+		return loops;
+	}
+
+	// A single block from outside jumping to the header, made if needed
+	private static void makePreheader(Function function, Block header, Set<Block> blocks) {
+		Block entering = null;
+		for (Block pred : header.preds) {
+			if (blocks.contains(pred)) continue;
+			if (entering != null) return;	// Would need phis, left alone
+			entering = pred;
+		}
+		if (entering != null && entering.succs.size() > 1) {
+			function.splitEdge(entering, header);
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Moves the instructions that compute the same value in every iteration of a
+ * loop to its preheader, so they run once. Inner loops go first, so their
+ * code can keep moving out of the loops around them.
+ *
+ * Only instructions without side effects move: running a division before
+ * the loop would fail even when the loop never runs.
+ */
+public final class LoopInvariantCodeMotion implements Pass {
+
+	@Override
+	public void run(Function function) {
+		for (Loop loop : Loop.find(function)) {
+			hoist(function, loop);
+		}
+	}
+
+	private static void hoist(Function function, Loop loop) {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			// Blocks in order, so a moved instruction goes after the ones it uses
+			for (Block block : function.reversePostOrder()) {
+				if (!loop.contains(block)) continue;
+
+				for (Instr instr : new ArrayList<Instr>(block.instrs)) {
+					if (instr.op == Op.PHI || instr.op.hasSideEffects()) continue;
+					if (!allInvariant(loop, instr.operands)) continue;
+
+					instr.moveTo(loop.preheader);
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private static boolean allInvariant(Loop loop, List<Value> operands) {
+		for (Value v : operands) {
+			if (!loop.isInvariant(v)) return false;
+		}
+		return true;
+	}
+
+}
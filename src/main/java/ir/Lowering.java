@@ -0,0 +1,322 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import code.Instruction;
+import code.OpCode;
+import typing.Type;
+
+import static code.OpCode.*;
+
+/*
+ * Turns a Function back into NSTM instructions, for the CodeGen.
+ *
+ * Every value gets its own virtual register, left for the CodeGen to
+ * allocate. Constants are loaded where a block first uses them. A phi
+ * becomes copies into its register at the end of each predecessor, so edges
+ * from a branch into a block with phis are split first, and the NSTM having
+ * no move, a copy is an add of zero.
+ * Blocks are laid out in reverse postorder, so most jumps fall through.
+ */
+public final class Lowering {
+
+	private final List<Instruction> code = new ArrayList<Instruction>();
+	private final Map<Instr, Integer> regs = new HashMap<Instr, Integer>();
+	private int intRegs;
+	private int floatRegs;
+
+	private final Map<Const, Integer> constRegs = new HashMap<Const, Integer>();	// Of the current block
+
+	// Registers holding zero, for the copies
+	private int intZero;
+	private int floatZero;
+
+	// Jumps and branches to patch once every block has its address
+	private final Map<Block, Integer> starts = new HashMap<Block, Integer>();
+	private final List<Integer> fixupInstrs = new ArrayList<Integer>();
+	private final List<Block> fixupTargets = new ArrayList<Block>();
+
+	public Instruction[] lower(Function function) {
+		splitCriticalEdges(function);
+		List<Block> order = function.reversePostOrder();
+		coalescePhis(order);
+
+		intZero = intRegs++;
+		floatZero = floatRegs++;
+		emit(LDIi, intZero, 0);
+		emit(LDIf, floatZero, Float.floatToIntBits(0.0f));
+
+		for (int i = 0; i < order.size(); i++) {
+			Block next = i + 1 < order.size() ? order.get(i + 1) : null;
+			lower(order.get(i), next);
+		}
+
+		for (int i = 0; i < fixupInstrs.size(); i++) {
+			Instruction instr = code.get(fixupInstrs.get(i));
+			int target = starts.get(fixupTargets.get(i));
+			if (instr.op == JUMP) {
+				instr.o1 = target;
+			} else {
+				instr.o2 = target - fixupInstrs.get(i);
+			}
+		}
+
+		return code.toArray(new Instruction[0]);
+	}
+
+	// Copies for a phi must only run on its edge, so an edge leaving a block
+	// with two successors and reaching a block with phis gets its own block
+	private static void splitCriticalEdges(Function function) {
+		for (Block block : new ArrayList<Block>(function.blocks)) {
+			if (block.succs.size() < 2) continue;
+
+			for (Block succ : new ArrayList<Block>(block.succs)) {
+				if (succ.preds.size() > 1 && !succ.getPhis().isEmpty()) {
+					function.splitEdge(block, succ);
+				}
+			}
+		}
+	}
+
+	// A value only used by a phi, computed in the block that copies it into
+	// the phi, can be computed straight into the register of the phi, as long
+	// as the old value of the phi is not read after it in that block
+	private void coalescePhis(List<Block> order) {
+		for (Block block : order) {
+			List<Instr> phis = block.getPhis();
+
+			for (int idx = 0; idx < block.preds.size(); idx++) {
+				Block pred = block.preds.get(idx);
+				if (pred.succs.size() != 1) continue;
+
+				for (Instr phi : phis) {
+					Value v = phi.getOperand(idx);
+					if (!(v instanceof Instr)) continue;
+
+					Instr def = (Instr) v;
+					if (def.op == Op.PHI || def.block != pred || regs.containsKey(def)) continue;
+					if (def.users.size() != 1 || readAfter(phi, def) || readByPhis(phi, phis, idx)) continue;
+
+					regs.put(def, reg(phi));
+				}
+			}
+		}
+	}
+
+	private static boolean readAfter(Instr phi, Instr def) {
+		List<Instr> instrs = def.block.instrs;
+		for (int i = instrs.indexOf(def) + 1; i < instrs.size(); i++) {
+			if (instrs.get(i).operands.contains(phi)) return true;
+		}
+		return false;
+	}
+
+	private static boolean readByPhis(Instr phi, List<Instr> phis, int idx) {
+		for (Instr other : phis) {
+			if (other.getOperand(idx) == phi) return true;
+		}
+		return false;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Blocks
+	 *------------------------------------------------------------------------------*/
+
+	private void lower(Block block, Block next) {
+		starts.put(block, code.size());
+		constRegs.clear();
+
+		Instr terminator = block.getTerminator();
+		for (Instr instr : block.instrs) {
+			if (instr.op != Op.PHI && instr != terminator) lower(instr);
+		}
+
+		if (block.succs.size() == 1) copiesTo(block, block.succs.get(0));
+
+		switch (terminator.op) {
+			case JUMP:
+				if (block.succs.get(0) != next) jump(JUMP, 0, block.succs.get(0));
+				break;
+			case BRANCH: {
+				int c = use(terminator.getOperand(0));
+				Block ifTrue = block.succs.get(0);
+				Block ifFalse = block.succs.get(1);
+				if (ifTrue == next) {
+					jump(BOFb, c, ifFalse);
+				} else if (ifFalse == next) {
+					jump(BOTb, c, ifTrue);
+				} else {
+					jump(BOFb, c, ifFalse);
+					jump(JUMP, 0, ifTrue);
+				}
+				break;
+			}
+			default:
+				emit(HALT, 0, 0);
+				break;
+		}
+	}
+
+	// Sets the phis of 'succ' to the values coming from 'block'. The copies
+	// happen at once: a phi read by another copy is saved first.
+	private void copiesTo(Block block, Block succ) {
+		List<Instr> phis = succ.getPhis();
+		if (phis.isEmpty()) return;
+
+		int idx = succ.preds.indexOf(block);
+		Map<Value, Integer> saved = new HashMap<Value, Integer>();
+		for (Instr phi : phis) {
+			Value v = phi.getOperand(idx);
+			if (v instanceof Instr && ((Instr) v).op == Op.PHI && ((Instr) v).block == succ && !saved.containsKey(v)) {
+				int t = newReg(v.type);
+				copy(v.type, t, reg((Instr) v));
+				saved.put(v, t);
+			}
+		}
+
+		for (Instr phi : phis) {
+			Value v = phi.getOperand(idx);
+			int dst = reg(phi);
+			if (v instanceof Const) {
+				loadConst((Const) v, dst);
+			} else if (saved.containsKey(v)) {
+				copy(phi.type, dst, saved.get(v));
+			} else if (reg((Instr) v) != dst) {
+				copy(phi.type, dst, reg((Instr) v));
+			}
+		}
+	}
+
+	private void copy(Type type, int dst, int src) {
+		if (type == Type.FLOAT32_TYPE) {
+			emit(SUBf, dst, src, floatZero);	// x - 0.0 keeps -0.0, unlike x + 0.0
+		} else {
+			emit(ADDi, dst, src, intZero);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Instructions
+	 *------------------------------------------------------------------------------*/
+
+	private void lower(Instr instr) {
+		switch (instr.op) {
+			case ADD:	arithmetic(instr, ADDi, ADDf);	break;
+			case SUB:	arithmetic(instr, SUBi, SUBf);	break;
+			case MUL:	arithmetic(instr, MULi, MULf);	break;
+			case DIV:	arithmetic(instr, DIVi, DIVf);	break;
+			case MOD:	arithmetic(instr, MODi, MODf);	break;
+
+			case EQ:	comparison(instr, EQUi, EQUf, EQUs);	break;
+			case NE:	comparison(instr, NEQi, NEQf, NEQs);	break;
+			case LT:	comparison(instr, LTHi, LTHf, LTHs);	break;
+			case LE:	comparison(instr, LTEi, LTEf, LTEs);	break;
+			case GT:	comparison(instr, GTHi, GTHf, GTHs);	break;
+			case GE:	comparison(instr, GTEi, GTEf, GTEs);	break;
+
+			case READ:
+				switch (instr.type) {
+					case INT_TYPE:		emit(CALL, 0, reg(instr));	break;
+					case FLOAT32_TYPE:	emit(CALL, 1, reg(instr));	break;
+					case BOOL_TYPE:		emit(CALL, 2, reg(instr));	break;
+					case STRING_TYPE:	emit(CALL, 3, reg(instr));	break;
+					default:			throw new Error("Invalid type: " + instr.type + "! Aborting");
+				}
+				break;
+
+			case WRITE: {
+				Value v = instr.getOperand(0);
+				int x = use(v);
+				switch (v.type) {
+					case INT_TYPE:		emit(CALL, 4, x);	break;
+					case FLOAT32_TYPE:	emit(CALL, 5, x);	break;
+					case BOOL_TYPE:		emit(CALL, 6, x);	break;
+					case STRING_TYPE:	emit(CALL, 7, x);	break;
+					default:			throw new Error("Invalid type: " + v.type + "! Aborting");
+				}
+				break;
+			}
+
+			default:
+				throw new Error("Unexpected " + instr.op + " in a block! Aborting");
+		}
+	}
+
+	private void arithmetic(Instr instr, OpCode intOp, OpCode floatOp) {
+		int y = use(instr.getOperand(0));
+		int z = use(instr.getOperand(1));
+		emit(instr.isFloat() ? floatOp : intOp, reg(instr), y, z);
+	}
+
+	private void comparison(Instr instr, OpCode intOp, OpCode floatOp, OpCode stringOp) {
+		Type t = instr.getOperand(0).type;
+		int y = use(instr.getOperand(0));
+		int z = use(instr.getOperand(1));
+
+		OpCode op = t == Type.FLOAT32_TYPE ? floatOp : t == Type.STRING_TYPE ? stringOp : intOp;
+		emit(op, reg(instr), y, z);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Registers
+	 *------------------------------------------------------------------------------*/
+
+	private int newReg(Type type) {
+		return type == Type.FLOAT32_TYPE ? floatRegs++ : intRegs++;
+	}
+
+	private int reg(Instr instr) {
+		Integer r = regs.get(instr);
+		if (r == null) {
+			r = newReg(instr.type);
+			regs.put(instr, r);
+		}
+		return r;
+	}
+
+	// Register with the value of an operand. A constant is loaded once per block.
+	private int use(Value v) {
+		if (v instanceof Instr) return reg((Instr) v);
+
+		Const c = (Const) v;
+		for (Map.Entry<Const, Integer> e : constRegs.entrySet()) {
+			if (e.getKey().sameAs(c)) return e.getValue();
+		}
+
+		int x = newReg(v.type);
+		loadConst(c, x);
+		constRegs.put(c, x);
+		return x;
+	}
+
+	private void loadConst(Const c, int x) {
+		if (c.isFloat()) {
+			emit(LDIf, x, Float.floatToIntBits(c.floatValue));
+		} else {
+			emit(LDIi, x, c.intValue);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Emits
+	 *------------------------------------------------------------------------------*/
+
+	private void emit(OpCode op, int o1, int o2, int o3) {
+		code.add(new Instruction(op, o1, o2, o3));
+	}
+
+	private void emit(OpCode op, int o1, int o2) {
+		emit(op, o1, o2, 0);
+	}
+
+	// Jumps and branches are patched at the end
+	private void jump(OpCode op, int reg, Block target) {
+		fixupInstrs.add(code.size());
+		fixupTargets.add(target);
+		emit(op, reg, 0);
+	}
+
+}
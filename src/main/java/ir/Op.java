@@ -0,0 +1,39 @@
+package ir;
+
+/*
+ * Operations of the IR. Arithmetic and comparisons work on any type, and the
+ * lowering picks the NSTM instruction from the type of the operands.
+ */
+public enum Op {
+	// Arithmetic
+	ADD, SUB, MUL, DIV, MOD,
+
+	// Comparisons, the result is a bool
+	EQ, NE, LT, LE, GT, GE,
+
+	// I/O, the type is the one of the value read or written
+	READ, WRITE,
+
+	// Merge of the values coming from each predecessor, in their order
+	PHI,
+
+	// Terminators, one at the end of every block
+	JUMP,		// Goes to the only successor
+	BRANCH,		// Goes to the first successor if the operand is true, else to the second
+	HALT;
+
+	public boolean isTerminator() {
+		return this == JUMP || this == BRANCH || this == HALT;
+	}
+
+	public boolean isComparison() {
+		return this == EQ || this == NE || this == LT || this == LE || this == GT || this == GE;
+	}
+
+	// Removing an unused instruction with side effects would change the program.
+	// Divisions are kept because they fail on zero.
+	public boolean hasSideEffects() {
+		return this == DIV || this == MOD || this == READ || this == WRITE || isTerminator();
+	}
+
+}
@@ -0,0 +1,9 @@
+package ir;
+
+/*
+ * An optimization over a function in SSA form. A pass may change the
+ * function as it wants, as long as it leaves it in SSA form.
+ */
+public interface Pass {
+	void run(Function function);
+}
@@ -0,0 +1,34 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Runs a list of passes over a function, in the order they were added.
+ */
+public final class PassManager {
+
+	private final List<Pass> passes = new ArrayList<Pass>();
+
+	public PassManager add(Pass pass) {
+		passes.add(pass);
+		return this;
+	}
+
+	public Function run(Function function) {
+		for (Pass pass : passes) {
+			pass.run(function);
+		}
+		return function;
+	}
+
+	// The passes run with the -O flag
+	public static PassManager standard() {
+		return new PassManager()
+			.add(new GlobalValueNumbering())
+			.add(new LoopInvariantCodeMotion())
+			.add(new StrengthReduction())
+			.add(new DeadCodeElimination());
+	}
+
+}
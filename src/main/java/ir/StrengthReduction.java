@@ -0,0 +1,106 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import typing.Type;
+
+/*
+ * Turns multiplications of an induction variable into additions.
+ *
+ * A basic induction variable is an int phi of the loop header that starts
+ * with some value and gets a constant added (or subtracted) on every back
+ * edge, like the 'i' of 'for i := 0; i < n; i++'. For each 'i * k' in the
+ * loop, with k invariant, a new induction variable j starts at 'init * k'
+ * and gets 'step * k' added right where i gets its step, so it is always
+ * equal to 'i * k' and the multiplication can read j instead.
+ * Ints wrap around, so this is exact even on overflow.
+ */
+public final class StrengthReduction implements Pass {
+
+	private Function function;
+
+	@Override
+	public void run(Function function) {
+		this.function = function;
+		for (Loop loop : Loop.find(function)) {
+			for (Instr phi : loop.header.getPhis()) {
+				reduce(loop, phi);
+			}
+		}
+	}
+
+	private void reduce(Loop loop, Instr phi) {
+		if (phi.type != Type.INT_TYPE) return;
+
+		// The value from the preheader, and the one updated on every back edge
+		Value init = null;
+		Instr next = null;
+		for (int i = 0; i < loop.header.preds.size(); i++) {
+			Value v = phi.getOperand(i);
+			if (loop.header.preds.get(i) == loop.preheader) {
+				init = v;
+			} else if (next == null && v instanceof Instr) {
+				next = (Instr) v;
+			} else if (v != next) {
+				return;
+			}
+		}
+		if (init == null || next == null || !isStep(next, phi)) return;
+
+		int step = ((Const) next.getOperand(1)).intValue;
+		if (next.op == Op.SUB) step = -step;
+
+		for (Instr user : new ArrayList<Instr>(phi.users)) {
+			if (user.op != Op.MUL || user.block == null || !loop.contains(user.block)) continue;
+
+			Value k = user.getOperand(0) == phi ? user.getOperand(1) : user.getOperand(0);
+			if (k == phi || !loop.isInvariant(k)) continue;
+
+			replace(loop, phi, init, next, step, user, k);
+		}
+	}
+
+	// i + c or i - c, with the constant on the right
+	private static boolean isStep(Instr next, Instr phi) {
+		return (next.op == Op.ADD || next.op == Op.SUB)
+			&& next.getOperand(0) == phi
+			&& next.getOperand(1) instanceof Const;
+	}
+
+	private void replace(Loop loop, Instr phi, Value init, Instr next, int step, Instr mul, Value k) {
+		// Before the loop: j0 = init * k and the increment, step * k
+		Value start = multiply(loop.preheader, init, k);
+		Value increment = multiply(loop.preheader, k, Const.of(Type.INT_TYPE, step));
+
+		// In the loop: j = phi(j0, j + step * k), updated next to i
+		Instr j = function.newInstr(Op.PHI, Type.INT_TYPE);
+		loop.header.addPhi(j);
+		Instr jNext = function.newInstr(Op.ADD, Type.INT_TYPE, j, increment);
+		insertAfter(next, jNext);
+
+		for (Block pred : loop.header.preds) {
+			j.addOperand(pred == loop.preheader ? start : jNext);
+		}
+
+		mul.replaceAllUsesWith(j);
+		mul.remove();
+	}
+
+	// The product, folded when both are constants
+	private Value multiply(Block block, Value a, Value b) {
+		if (a instanceof Const && b instanceof Const) {
+			return Const.of(Type.INT_TYPE, ((Const) a).intValue * ((Const) b).intValue);
+		}
+		Instr mul = function.newInstr(Op.MUL, Type.INT_TYPE, a, b);
+		block.insertBeforeTerminator(mul);
+		return mul;
+	}
+
+	private static void insertAfter(Instr pos, Instr instr) {
+		List<Instr> instrs = pos.block.instrs;
+		instr.block = pos.block;
+		instrs.add(instrs.indexOf(pos) + 1, instr);
+	}
+
+}
@@ -0,0 +1,37 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import typing.Type;
+
+/*
+ * Something an instruction can use as an operand: a constant, or the result
+ * of another instruction. Every value is defined only once (SSA), and keeps
+ * the instructions that use it, so it can be replaced everywhere at once.
+ */
+public abstract class Value {
+	public final Type type;
+	final List<Instr> users = new ArrayList<Instr>();
+
+	Value(Type type) {
+		this.type = type;
+	}
+
+	public List<Instr> getUsers() {
+		return users;
+	}
+
+	// Makes every user of this value use another one instead
+	public void replaceAllUsesWith(Value other) {
+		for (Instr user : new ArrayList<Instr>(users)) {
+			user.replaceOperand(this, other);
+		}
+	}
+
+	// Float values go to the float registers, the rest to the int ones
+	public boolean isFloat() {
+		return type == Type.FLOAT32_TYPE;
+	}
+
+}
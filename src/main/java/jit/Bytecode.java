@@ -0,0 +1,297 @@
+package jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Code of a single method. Keeps track of the operand stack depth of every
+ * instruction emitted, so the max stack comes out exact, and patches the
+ * branch offsets once their labels are placed.
+ *
+ * Branches take 16 bit offsets. When one does not fit, BranchTooFar is thrown
+ * and the method must be compiled again with long branches, where a goto_w
+ * reaches the target and a condition is inverted to jump around it.
+ */
+final class Bytecode {
+
+	// Opcodes used by the JitCompiler
+	static final int ICONST_0 = 0x03;
+	static final int FCONST_0 = 0x0b;
+	static final int FCONST_1 = 0x0c;
+	static final int FCONST_2 = 0x0d;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC = 0x12;
+	static final int LDC_W = 0x13;
+	static final int ILOAD = 0x15;
+	static final int FLOAD = 0x17;
+	static final int ALOAD = 0x19;
+	static final int ISTORE = 0x36;
+	static final int FSTORE = 0x38;
+	static final int POP = 0x57;
+	static final int IADD = 0x60;
+	static final int FADD = 0x62;
+	static final int ISUB = 0x64;
+	static final int FSUB = 0x66;
+	static final int IMUL = 0x68;
+	static final int FMUL = 0x6a;
+	static final int IDIV = 0x6c;
+	static final int FDIV = 0x6e;
+	static final int IREM = 0x70;
+	static final int FREM = 0x72;
+	static final int IINC = 0x84;
+	static final int FCMPL = 0x95;
+	static final int FCMPG = 0x96;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int IFLT = 0x9b;
+	static final int IFGE = 0x9c;
+	static final int IFGT = 0x9d;
+	static final int IFLE = 0x9e;
+	static final int IF_ICMPEQ = 0x9f;
+	static final int IF_ICMPNE = 0xa0;
+	static final int IF_ICMPLT = 0xa1;
+	static final int IF_ICMPGE = 0xa2;
+	static final int IF_ICMPGT = 0xa3;
+	static final int IF_ICMPLE = 0xa4;
+	static final int GOTO = 0xa7;
+	static final int GOTO_W = 0xc8;
+	static final int IRETURN = 0xac;
+	static final int FRETURN = 0xae;
+	static final int RETURN = 0xb1;
+	static final int GETSTATIC = 0xb2;
+	static final int PUTSTATIC = 0xb3;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESTATIC = 0xb8;
+	static final int WIDE = 0xc4;
+
+	// A position in the code, which branches may refer to before it is placed
+	static final class Label {
+		private int position = -1;
+		private int stack = -1;	// Stack depth at the label, known from the first branch or from placing it
+		private final List<Integer> branches = new ArrayList<Integer>(); // Position of each branch opcode
+	}
+
+	// A branch offset does not fit in 16 bits
+	@SuppressWarnings("serial")
+	static final class BranchTooFar extends RuntimeException {
+		BranchTooFar() {
+			super("Branch is too far", null, false, false);
+		}
+	}
+
+	private final ClassWriter cw;
+	private final boolean longBranches;
+	private byte[] code = new byte[256];
+	private int size;
+
+	private int stack;
+	private int maxStack;
+	private int maxLocals;
+
+	Bytecode(ClassWriter cw) {
+		this(cw, false);
+	}
+
+	Bytecode(ClassWriter cw, boolean longBranches) {
+		this.cw = cw;
+		this.longBranches = longBranches;
+	}
+
+	int getMaxStack() {
+		return maxStack;
+	}
+
+	int getMaxLocals() {
+		return maxLocals;
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOf(code, size);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Emission
+	 *------------------------------------------------------------------------------*/
+
+	private void u1(int b) {
+		if (size == code.length) code = Arrays.copyOf(code, size * 2);
+		code[size++] = (byte) b;
+	}
+
+	private void u2(int s) {
+		u1(s >>> 8);
+		u1(s);
+	}
+
+	private void u4(int i) {
+		u2(i >>> 16);
+		u2(i);
+	}
+
+	private void adjustStack(int delta) {
+		stack += delta;
+		if (stack > maxStack) maxStack = stack;
+	}
+
+	// Emits an instruction without operands, which changes the stack by delta
+	void op(int opcode, int delta) {
+		u1(opcode);
+		adjustStack(delta);
+	}
+
+	// Instructions that take a constant pool index: field and method access
+	void member(int opcode, int cpIdx, int delta) {
+		u1(opcode);
+		u2(cpIdx);
+		adjustStack(delta);
+	}
+
+	void pushInt(int value) {
+		if (value >= -1 && value <= 5) {
+			u1(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			u1(BIPUSH);
+			u1(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			u1(SIPUSH);
+			u2(value);
+		} else {
+			ldc(cw.integer(value));
+			return;
+		}
+		adjustStack(1);
+	}
+
+	void pushFloat(float value) {
+		// fconst is only used for +0.0, which has the same bits as the constant
+		if (Float.floatToRawIntBits(value) == 0) {
+			u1(FCONST_0);
+		} else if (value == 1.0f) {
+			u1(FCONST_1);
+		} else if (value == 2.0f) {
+			u1(FCONST_2);
+		} else {
+			ldc(cw.floatConst(value));
+			return;
+		}
+		adjustStack(1);
+	}
+
+	private void ldc(int cpIdx) {
+		if (cpIdx <= 0xFF) {
+			u1(LDC);
+			u1(cpIdx);
+		} else {
+			u1(LDC_W);
+			u2(cpIdx);
+		}
+		adjustStack(1);
+	}
+
+	// Loads and stores of locals, the opcode tells the type
+	void local(int opcode, int slot) {
+		if (slot > 0xFF) {
+			u1(WIDE);
+			u1(opcode);
+			u2(slot);
+		} else {
+			u1(opcode);
+			u1(slot);
+		}
+
+		boolean isStore = opcode == ISTORE || opcode == FSTORE;
+		adjustStack(isStore ? -1 : 1);
+		if (slot + 1 > maxLocals) maxLocals = slot + 1;
+	}
+
+	void iinc(int slot, int value) {
+		if (slot > 0xFF || value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+			u1(WIDE);
+			u1(IINC);
+			u2(slot);
+			u2(value);
+		} else {
+			u1(IINC);
+			u1(slot);
+			u1(value);
+		}
+		if (slot + 1 > maxLocals) maxLocals = slot + 1;
+	}
+
+	// Locals used as parameters count even if the code never touches them
+	void reserveLocals(int count) {
+		if (count > maxLocals) maxLocals = count;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Branches
+	 *------------------------------------------------------------------------------*/
+
+	// Emits a branch, popping 'pops' values for the condition
+	void jump(int opcode, Label target, int pops) {
+		adjustStack(-pops);
+		if (target.stack == -1) target.stack = stack;
+
+		if (longBranches) {
+			// The inverted condition skips itself (3 bytes) and the goto_w (5 bytes)
+			if (opcode != GOTO) {
+				u1(invert(opcode));
+				u2(8);
+			}
+			int branch = size;
+			target.branches.add(branch);
+			u1(GOTO_W);
+			u4(0); // Patched when the label is placed
+
+			if (target.position != -1) patch(target, branch);
+			return;
+		}
+
+		int branch = size;
+		target.branches.add(branch);
+		u1(opcode);
+		u2(0); // Patched when the label is placed
+
+		if (target.position != -1) patch(target, branch);
+	}
+
+	// The conditional branches come in pairs, each one next to its opposite
+	private static int invert(int opcode) {
+		if (opcode < IFEQ || opcode > IF_ICMPLE) throw new Error("Opcode " + opcode + " is not a condition! Aborting");
+		return IFEQ + ((opcode - IFEQ) ^ 1);
+	}
+
+	void mark(Label label) {
+		if (label.position != -1) throw new Error("Label placed twice! Aborting");
+
+		label.position = size;
+		if (label.stack == -1) {
+			label.stack = stack;
+		} else {
+			// The code right before may end in a goto, the depth comes from the branches
+			stack = label.stack;
+		}
+
+		for (int branch : label.branches) {
+			patch(label, branch);
+		}
+	}
+
+	private void patch(Label label, int branch) {
+		int offset = label.position - branch;
+		if ((code[branch] & 0xFF) == GOTO_W) {
+			code[branch + 1] = (byte) (offset >>> 24);
+			code[branch + 2] = (byte) (offset >>> 16);
+			code[branch + 3] = (byte) (offset >>> 8);
+			code[branch + 4] = (byte) offset;
+			return;
+		}
+		if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) throw new BranchTooFar();
+
+		code[branch + 1] = (byte) (offset >>> 8);
+		code[branch + 2] = (byte) offset;
+	}
+
+}
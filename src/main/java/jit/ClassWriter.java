@@ -0,0 +1,242 @@
+package jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Minimal writer for JVM class files, with just what the JitCompiler needs:
+ * a constant pool, static fields and static methods.
+ * Classes are written with version 49 (Java 5), so the methods don't need
+ * StackMapTable frames and the verifier infers the types by itself.
+ */
+final class ClassWriter {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int VERSION = 49;
+
+	// Constant pool tags
+	private static final int CONSTANT_Utf8 = 1;
+	private static final int CONSTANT_Integer = 3;
+	private static final int CONSTANT_Float = 4;
+	private static final int CONSTANT_Class = 7;
+	private static final int CONSTANT_Fieldref = 9;
+	private static final int CONSTANT_Methodref = 10;
+	private static final int CONSTANT_NameAndType = 12;
+
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private final Map<String, Integer> entries = new HashMap<String, Integer>();
+	private int poolSize = 1; // Index 0 is not used
+
+	private final String name;
+	private final List<byte[]> fields = new ArrayList<byte[]>();
+	private final List<byte[]> methods = new ArrayList<byte[]>();
+
+	ClassWriter(String name) {
+		this.name = name;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Constant pool
+	 *------------------------------------------------------------------------------*/
+
+	// Entries are shared, the key identifies an entry by its tag and contents
+	private int entry(String key) {
+		Integer idx = entries.get(key);
+		return idx == null ? -1 : idx;
+	}
+
+	private int add(String key) {
+		if (poolSize > 0xFFFF) throw new Error("Constant pool is full! Aborting");
+		entries.put(key, poolSize);
+		return poolSize++;
+	}
+
+	int utf8(String s) {
+		String key = "U" + s;
+		int idx = entry(key);
+		if (idx != -1) return idx;
+
+		try {
+			pool.writeByte(CONSTANT_Utf8);
+			pool.writeUTF(s);
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		return add(key);
+	}
+
+	int integer(int value) {
+		String key = "I" + value;
+		int idx = entry(key);
+		if (idx != -1) return idx;
+
+		write(CONSTANT_Integer, value);
+		return add(key);
+	}
+
+	int floatConst(float value) {
+		// Keyed by the bits, so -0.0 and 0.0 (or different NaNs) are kept apart
+		int bits = Float.floatToRawIntBits(value);
+		String key = "F" + bits;
+		int idx = entry(key);
+		if (idx != -1) return idx;
+
+		write(CONSTANT_Float, bits);
+		return add(key);
+	}
+
+	int classRef(String internalName) {
+		String key = "C" + internalName;
+		int idx = entry(key);
+		if (idx != -1) return idx;
+
+		int nameIdx = utf8(internalName);
+		write(CONSTANT_Class, nameIdx, 2);
+		return add(key);
+	}
+
+	private int nameAndType(String name, String desc) {
+		String key = "N" + name + ":" + desc;
+		int idx = entry(key);
+		if (idx != -1) return idx;
+
+		int nameIdx = utf8(name);
+		int descIdx = utf8(desc);
+		write(CONSTANT_NameAndType, (nameIdx << 16) | descIdx);
+		return add(key);
+	}
+
+	int fieldRef(String owner, String name, String desc) {
+		return memberRef(CONSTANT_Fieldref, owner, name, desc);
+	}
+
+	int methodRef(String owner, String name, String desc) {
+		return memberRef(CONSTANT_Methodref, owner, name, desc);
+	}
+
+	private int memberRef(int tag, String owner, String name, String desc) {
+		String key = tag + owner + "." + name + ":" + desc;
+		int idx = entry(key);
+		if (idx != -1) return idx;
+
+		int classIdx = classRef(owner);
+		int natIdx = nameAndType(name, desc);
+		write(tag, (classIdx << 16) | natIdx);
+		return add(key);
+	}
+
+	// Writes an entry with a 4 byte payload
+	private void write(int tag, int payload) {
+		write(tag, payload, 4);
+	}
+
+	private void write(int tag, int payload, int bytes) {
+		try {
+			pool.writeByte(tag);
+			if (bytes == 2) {
+				pool.writeShort(payload);
+			} else {
+				pool.writeInt(payload);
+			}
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Members
+	 *------------------------------------------------------------------------------*/
+
+	void addField(int access, String name, String desc) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(desc));
+			out.writeShort(0); // Attributes
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	void addMethod(int access, String name, String desc, Bytecode code) {
+		byte[] instrs = code.toByteArray();
+		if (instrs.length > 0xFFFF) throw new CodeTooLargeException("Method " + name + " has " + instrs.length + " bytes of code");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(desc));
+			out.writeShort(1); // Attributes: only Code
+
+			out.writeShort(utf8("Code"));
+			out.writeInt(12 + instrs.length);
+			out.writeShort(code.getMaxStack());
+			out.writeShort(code.getMaxLocals());
+			out.writeInt(instrs.length);
+			out.write(instrs);
+			out.writeShort(0); // Exception table
+			out.writeShort(0); // Attributes
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Class file
+	 *------------------------------------------------------------------------------*/
+
+	byte[] toByteArray() {
+		// Entries must be in the pool before it is written
+		int thisIdx = classRef(name);
+		int superIdx = classRef("java/lang/Object");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+
+			out.writeShort(poolSize);
+			poolBytes.writeTo(out);
+
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisIdx);
+			out.writeShort(superIdx);
+			out.writeShort(0); // Interfaces
+
+			out.writeShort(fields.size());
+			for (byte[] field : fields) out.write(field);
+
+			out.writeShort(methods.size());
+			for (byte[] method : methods) out.write(method);
+
+			out.writeShort(0); // Attributes
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		return bytes.toByteArray();
+	}
+
+}
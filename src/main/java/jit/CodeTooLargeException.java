@@ -0,0 +1,11 @@
+package jit;
+
+// A function whose method would go over the JVM's 64 KiB of code
+@SuppressWarnings("serial")
+public final class CodeTooLargeException extends RuntimeException {
+
+	public CodeTooLargeException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,731 @@
+package jit;
+
+import static jit.Bytecode.*;
+
+import java.util.Arrays;
+
+import ast.AST;
+import ast.ASTBaseVisitor;
+import ast.NodeKind;
+import tables.FuncTable;
+import tables.StrTable;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Compiles the AST into a JVM class, so HotSpot does the register allocation
+ * and inlining of the Go program.
+ * Every function becomes a static method and every var a static field, like
+ * a word of the interpreters' memory: a var keeps its value from one call to
+ * the next, and a call stores its args in the fields of the called function
+ * one after the other. Ints, bools and strings (as indexes in the string
+ * table) are JVM ints, float32s are JVM floats.
+ * Nothing else touches the vars of a function while it runs unless it can
+ * call itself back, so the other functions copy their vars to locals when
+ * they start and back to the fields when they return. Recursive ones use the
+ * fields, their calls share the vars as in the interpreters.
+ * A return ends the method, one that reaches its end without a return gives
+ * the zero value, like in the interpreters.
+ * A function whose code goes over the JVM's 64 KiB limit throws a
+ * CodeTooLargeException, so the program can be run some other way.
+ */
+public final class JitCompiler extends ASTBaseVisitor<Void> {
+
+	private static final String CLASS_NAME = "jit/GoProgram";
+	private static final String RUNTIME = "jit/JitRuntime";
+	private static final String RUNTIME_DESC = "L" + RUNTIME + ";";
+	private static final String RUNTIME_FIELD = "rt";
+	private static final String INTERRUPT = "code/ProgramInterruptedException";
+	private static final String ENTRY = "$run"; // Not a valid Go identifier, so it can't clash
+
+	private final StrTable st;
+	private final VarTable vt;
+	private final FuncTable ft;
+
+	private ClassWriter cw;
+	private AST[] functionArgs;		// Args node of each function, null if it has none
+	private String[] descriptors;	// Method descriptor of each function
+	private boolean[] recursive;	// Functions that can call themselves back
+	private int mainIdx;
+
+	// State of the method being compiled
+	private Bytecode code;
+	private int[] slots;	// Local of each var, -1 for the vars used from their field
+	private Type retType;	// Of the function being compiled
+
+	public JitCompiler(StrTable st, VarTable vt, FuncTable ft) {
+		this.st = st;
+		this.vt = vt;
+		this.ft = ft;
+	}
+
+	public JitProgram compile(AST root) {
+		cw = new ClassWriter(CLASS_NAME);
+		functionArgs = new AST[ft.size()];
+		descriptors = new String[ft.size()];
+		recursive = new boolean[ft.size()];
+
+		visit(root);
+
+		cw.addField(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC, RUNTIME_FIELD, RUNTIME_DESC);
+		for (int i = 0; i < vt.size(); i++) {
+			cw.addField(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC, fieldName(i), fieldDesc(i));
+		}
+		addEntry();
+
+		return new JitProgram(cw, ENTRY, st);
+	}
+
+	@Override
+	public void execute(AST root) {
+		compile(root).run();
+	}
+
+	// $run(JitRuntime) saves the runtime where the methods can reach it, then
+	// calls main with every var at zero, as a new memory would be
+	private void addEntry() {
+		code = new Bytecode(cw);
+		code.local(ALOAD, 0);
+		code.member(PUTSTATIC, cw.fieldRef(CLASS_NAME, RUNTIME_FIELD, RUNTIME_DESC), -1);
+		for (int i = 0; i < vt.size(); i++) {
+			pushZero(vt.getType(i));
+			code.member(PUTSTATIC, field(i), -1);
+		}
+		invoke(mainIdx);
+		if (ft.getType(mainIdx) != Type.NO_TYPE) code.op(POP, -1);
+		code.op(RETURN, 0);
+
+		cw.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, ENTRY, "(" + RUNTIME_DESC + ")V", code);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Helpers
+	 *------------------------------------------------------------------------------*/
+
+	private static boolean isFloat(Type t) {
+		return t == Type.FLOAT32_TYPE;
+	}
+
+	private static char descriptor(Type t) {
+		switch (t) {
+			case NO_TYPE:		return 'V';
+			case FLOAT32_TYPE:	return 'F';
+			default:			return 'I';
+		}
+	}
+
+	// The index keeps apart the vars with the same name in other functions
+	private String fieldName(int varIdx) {
+		return vt.getName(varIdx) + "$" + varIdx;
+	}
+
+	private String fieldDesc(int varIdx) {
+		return String.valueOf(descriptor(vt.getType(varIdx)));
+	}
+
+	private int field(int varIdx) {
+		return cw.fieldRef(CLASS_NAME, fieldName(varIdx), fieldDesc(varIdx));
+	}
+
+	private void load(int varIdx) {
+		if (slots[varIdx] == -1) {
+			code.member(GETSTATIC, field(varIdx), 1);
+		} else {
+			code.local(isFloat(vt.getType(varIdx)) ? FLOAD : ILOAD, slots[varIdx]);
+		}
+	}
+
+	private void store(int varIdx) {
+		if (slots[varIdx] == -1) {
+			code.member(PUTSTATIC, field(varIdx), -1);
+		} else {
+			code.local(isFloat(vt.getType(varIdx)) ? FSTORE : ISTORE, slots[varIdx]);
+		}
+	}
+
+	// Adds a constant to an int var, without the stack when it is in a local
+	private void increment(int varIdx, int amount) {
+		if (slots[varIdx] != -1 && amount >= -Short.MAX_VALUE && amount <= Short.MAX_VALUE) {
+			code.iinc(slots[varIdx], amount);
+			return;
+		}
+		load(varIdx);
+		code.pushInt(amount);
+		code.op(IADD, -1);
+		store(varIdx);
+	}
+
+	private void pushZero(Type t) {
+		if (isFloat(t)) {
+			code.pushFloat(0.0f);
+		} else {
+			code.pushInt(0);
+		}
+	}
+
+	private void runtimeField() {
+		code.member(GETSTATIC, cw.fieldRef(CLASS_NAME, RUNTIME_FIELD, RUNTIME_DESC), 1);
+	}
+
+	// Calls a JitRuntime method, the runtime must be on the stack below the arguments
+	private void runtimeCall(String name, String desc, int delta) {
+		code.member(INVOKEVIRTUAL, cw.methodRef(RUNTIME, name, desc), delta);
+	}
+
+	// Calls a function, its args must be in its fields already
+	private void invoke(int funcIdx) {
+		int delta = ft.getType(funcIdx) == Type.NO_TYPE ? 0 : 1;
+		code.member(INVOKESTATIC, cw.methodRef(CLASS_NAME, ft.getName(funcIdx), descriptors[funcIdx]), delta);
+	}
+
+	// Jumps back to the start of a loop, stopping if the thread was interrupted
+	private void loopBack(Label start) {
+		code.member(INVOKESTATIC, cw.methodRef(INTERRUPT, "check", "()V"), 0);
+		code.jump(GOTO, start, 0);
+	}
+
+	private static boolean isComparison(NodeKind kind) {
+		switch (kind) {
+			case EQUALS_NODE:
+			case NOT_EQUALS_NODE:
+			case LESS_NODE:
+			case LESS_OR_EQUALS_NODE:
+			case GREATER_NODE:
+			case GREATER_OR_EQUALS_NODE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	// Branch taken when two ints do not satisfy the comparison
+	private static int ifIntsFail(NodeKind kind) {
+		switch (kind) {
+			case EQUALS_NODE:			return IF_ICMPNE;
+			case NOT_EQUALS_NODE:		return IF_ICMPEQ;
+			case LESS_NODE:				return IF_ICMPGE;
+			case LESS_OR_EQUALS_NODE:	return IF_ICMPGT;
+			case GREATER_NODE:			return IF_ICMPLE;
+			default:					return IF_ICMPLT;
+		}
+	}
+
+	// Branch taken when the result of a compare (-1, 0 or 1) doesn't satisfy the comparison
+	private static int ifCompareFails(NodeKind kind) {
+		switch (kind) {
+			case EQUALS_NODE:			return IFNE;
+			case NOT_EQUALS_NODE:		return IFEQ;
+			case LESS_NODE:				return IFGE;
+			case LESS_OR_EQUALS_NODE:	return IFGT;
+			case GREATER_NODE:			return IFLE;
+			default:					return IFLT;
+		}
+	}
+
+	// Jumps to the target when the condition is false, leaving the stack as it was
+	private void jumpIfFalse(AST cond, Label target) {
+		if (!isComparison(cond.kind)) {
+			visit(cond);
+			code.jump(IFEQ, target, 1);
+			return;
+		}
+
+		AST l = cond.getChild(0);
+		AST r = cond.getChild(1);
+
+		switch (l.type) {
+			case FLOAT32_TYPE:
+				visit(l);
+				visit(r);
+				// NaN makes every comparison but '!=' false, so it must compare as
+				// greater for '<' and '<=', and as less for the others
+				boolean less = cond.kind == NodeKind.LESS_NODE || cond.kind == NodeKind.LESS_OR_EQUALS_NODE;
+				code.op(less ? FCMPG : FCMPL, -1);
+				code.jump(ifCompareFails(cond.kind), target, 1);
+				break;
+			case STRING_TYPE:
+				runtimeField();
+				visit(l);
+				visit(r);
+				runtimeCall("compareStrings", "(II)I", -2);
+				code.jump(ifCompareFails(cond.kind), target, 1);
+				break;
+			default:
+				visit(l);
+				visit(r);
+				code.jump(ifIntsFail(cond.kind), target, 2);
+		}
+	}
+
+	// Pushes 1 when the comparison holds, 0 otherwise
+	private Void comparison(AST node) {
+		Label isFalse = new Label();
+		Label end = new Label();
+
+		jumpIfFalse(node, isFalse);
+		code.pushInt(1);
+		code.jump(GOTO, end, 0);
+		code.mark(isFalse);
+		code.pushInt(0);
+		code.mark(end);
+		return null;
+	}
+
+	private Void arithmetic(AST node, int intOp, int floatOp) {
+		AST l = node.getChild(0);
+		visit(l);
+		visit(node.getChild(1));
+		code.op(isFloat(l.type) ? floatOp : intOp, -1);
+		return null;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Var values
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Void visitBoolVal(AST node) {
+		code.pushInt(node.intData);
+		return null;
+	}
+
+	@Override
+	protected Void visitIntVal(AST node) {
+		code.pushInt(node.intData);
+		return null;
+	}
+
+	@Override
+	protected Void visitFloatVal(AST node) {
+		code.pushFloat(node.floatData);
+		return null;
+	}
+
+	@Override
+	protected Void visitStringVal(AST node) {
+		code.pushInt(node.intData);
+		return null;
+	}
+
+	@Override
+	protected Void visitVarUse(AST node) {
+		load(node.intData);
+		return null;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Input and output
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Void visitInput(AST node) {
+		int varIdx = node.getChild(0).intData;
+		Type varType = vt.getType(varIdx);
+
+		runtimeField();
+		switch (varType) {
+			case INT_TYPE:			runtimeCall("readInt", "()I", 0);		break;
+			case FLOAT32_TYPE:		runtimeCall("readFloat", "()F", 0);	break;
+			case BOOL_TYPE:			runtimeCall("readBool", "()I", 0);		break;
+			case STRING_TYPE:		runtimeCall("readString", "()I", 0);	break;
+			case NO_TYPE:
+			default:
+				throw new Error("Invalid input type: " + varType + "! Aborting");
+		}
+		store(varIdx);
+		return null;
+	}
+
+	@Override
+	protected Void visitOutput(AST node) {
+		AST expressionList = node.getChild(0);
+
+		if (expressionList != null) {
+			for (AST expression : expressionList.getChildren()) {
+				runtimeField();
+				visit(expression);
+
+				switch (expression.type) {
+					case INT_TYPE:			runtimeCall("writeInt", "(I)V", -2);		break;
+					case FLOAT32_TYPE:		runtimeCall("writeFloat", "(F)V", -2);		break;
+					case BOOL_TYPE:			runtimeCall("writeBool", "(I)V", -2);		break;
+					case STRING_TYPE:		runtimeCall("writeString", "(I)V", -2);	break;
+					case NO_TYPE:
+					default:
+						throw new Error("Invalid output type: " + expression.type + "! Aborting");
+				}
+			}
+		}
+
+		runtimeField();
+		runtimeCall("endLine", "()V", -1);
+		return null;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Relational operations
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Void visitEquals(AST node) {
+		return comparison(node);
+	}
+
+	@Override
+	protected Void visitNotEquals(AST node) {
+		return comparison(node);
+	}
+
+	@Override
+	protected Void visitLess(AST node) {
+		return comparison(node);
+	}
+
+	@Override
+	protected Void visitLessOrEquals(AST node) {
+		return comparison(node);
+	}
+
+	@Override
+	protected Void visitGreater(AST node) {
+		return comparison(node);
+	}
+
+	@Override
+	protected Void visitGreaterOrEquals(AST node) {
+		return comparison(node);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Arithmetic operations
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Void visitStar(AST node) {
+		return arithmetic(node, IMUL, FMUL);
+	}
+
+	@Override
+	protected Void visitDiv(AST node) {
+		return arithmetic(node, IDIV, FDIV);
+	}
+
+	@Override
+	protected Void visitMod(AST node) {
+		return arithmetic(node, IREM, FREM);
+	}
+
+	@Override
+	protected Void visitPlus(AST node) {
+		return arithmetic(node, IADD, FADD);
+	}
+
+	@Override
+	protected Void visitMinus(AST node) {
+		return arithmetic(node, ISUB, FSUB);
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Statements
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Void visitStatementSection(AST node) {
+		for (AST child : node.getChildren()) {
+			visit(child);
+
+			// A function called as a statement has its return value discarded
+			if (child.kind == NodeKind.FUNC_CALL_NODE && child.type != Type.NO_TYPE) {
+				code.op(POP, -1);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitReturn(AST node) {
+		if (node.getChildren().size() == 1) {
+			visit(node.getChild(0));
+			if (retType == Type.NO_TYPE) code.op(POP, -1);
+		}
+		ret();
+		return null;
+	}
+
+	// Saves the vars kept in locals and returns the value on top of the stack,
+	// if the function has one. The code after it is never reached
+	private void ret() {
+		for (int i = 0; i < slots.length; i++) {
+			if (slots[i] != -1) {
+				code.local(isFloat(vt.getType(i)) ? FLOAD : ILOAD, slots[i]);
+				code.member(PUTSTATIC, field(i), -1);
+			}
+		}
+
+		if (retType == Type.NO_TYPE) {
+			code.op(RETURN, 0);
+		} else {
+			code.op(isFloat(retType) ? FRETURN : IRETURN, -1);
+		}
+	}
+
+	@Override
+	protected Void visitVarDecl(AST node) {
+		// A declaration without a value keeps whatever the local holds
+		if (node.getChildren().size() == 0) return null;
+
+		visit(node.getChild(0));
+		store(node.intData);
+		return null;
+	}
+
+	@Override
+	protected Void visitAssign(AST node) {
+		visit(node.getChild(1));
+		store(node.getChild(0).intData);
+		return null;
+	}
+
+	// Helper method for the '+=' and '-=' assign operations
+	private Void compoundAssign(AST node, int sign) {
+		int varIdx = node.getChild(0).intData;
+		AST expr = node.getChild(1);
+		boolean isFloatVar = isFloat(vt.getType(varIdx));
+
+		if (!isFloatVar && expr.kind == NodeKind.INT_VAL_NODE) {
+			increment(varIdx, sign * expr.intData);
+			return null;
+		}
+
+		load(varIdx);
+		visit(expr);
+		if (isFloatVar) {
+			code.op(sign > 0 ? FADD : FSUB, -1);
+		} else {
+			code.op(sign > 0 ? IADD : ISUB, -1);
+		}
+		store(varIdx);
+		return null;
+	}
+
+	@Override
+	protected Void visitPlusAssign(AST node) {
+		return compoundAssign(node, 1);
+	}
+
+	@Override
+	protected Void visitMinusAssign(AST node) {
+		return compoundAssign(node, -1);
+	}
+
+	// Helper method for the '++' and '--' unary operations
+	private Void unary(AST node, int sign) {
+		AST child = node.getChild(0);
+
+		if (isFloat(child.type)) {
+			load(child.intData);
+			code.pushFloat(1.0f);
+			code.op(sign > 0 ? FADD : FSUB, -1);
+			store(child.intData);
+		} else {
+			increment(child.intData, sign);
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitPlusPlus(AST node) {
+		return unary(node, 1);
+	}
+
+	@Override
+	protected Void visitMinusMinus(AST node) {
+		return unary(node, -1);
+	}
+
+	@Override
+	protected Void visitIf(AST node) {
+		Label elseLabel = new Label();
+		jumpIfFalse(node.getChild(0), elseLabel);
+		visit(node.getChild(1));
+
+		if (node.getChildren().size() == 3) {
+			Label end = new Label();
+			code.jump(GOTO, end, 0);
+			code.mark(elseLabel);
+			visit(node.getChild(2));
+			code.mark(end);
+		} else {
+			code.mark(elseLabel);
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitElse(AST node) {
+		visit(node.getChild(0));
+		return null;
+	}
+
+	@Override
+	protected Void visitWhile(AST node) {
+		Label start = new Label();
+		code.mark(start);
+
+		// Without a condition the loop never ends
+		if (node.getChildren().size() == 1) {
+			visit(node.getChild(0));
+			loopBack(start);
+			return null;
+		}
+
+		Label end = new Label();
+		jumpIfFalse(node.getChild(0), end);
+		visit(node.getChild(1));
+		loopBack(start);
+		code.mark(end);
+		return null;
+	}
+
+	@Override
+	protected Void visitFor(AST node) {
+		visit(node.getChild(0));
+
+		Label start = new Label();
+		Label end = new Label();
+
+		code.mark(start);
+		jumpIfFalse(node.getChild(1), end);
+		visit(node.getChild(3));
+		visit(node.getChild(2));
+		loopBack(start);
+		code.mark(end);
+		return null;
+	}
+
+	@Override
+	protected Void visitFuncCall(AST node) {
+		int funcIdx = node.intData;
+		AST argsNode = functionArgs[funcIdx];
+
+		// Each arg is stored before the next one is evaluated, like in the interpreters
+		if (argsNode != null) {
+			AST expressionList = node.getChild(0);
+			for (int i = 0; i < argsNode.getChildren().size(); i++) {
+				visit(expressionList.getChild(i));
+				code.member(PUTSTATIC, field(argsNode.getChild(i).intData), -1);
+			}
+		}
+
+		invoke(funcIdx);
+		return null;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Functions
+	 *------------------------------------------------------------------------------*/
+
+	@Override
+	protected Void visitProgram(AST node) {
+		return visit(node.getChild(0));
+	}
+
+	@Override
+	protected Void visitFuncList(AST node) {
+		// Descriptors are needed first, so calls can be compiled before the called function
+		for (AST child : node.getChildren()) {
+			int funcIdx = child.intData;
+			if (child.kind == NodeKind.FUNC_DECL_NODE && child.getChildren().size() == 2) {
+				functionArgs[funcIdx] = child.getChild(0);
+			}
+
+			descriptors[funcIdx] = "()" + descriptor(ft.getType(funcIdx));
+		}
+		findRecursive(node);
+
+		for (AST child : node.getChildren()) {
+			visit(child);
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitFuncMain(AST node) {
+		mainIdx = node.intData;
+		addMethod(node.intData, node.getChild(0));
+		return null;
+	}
+
+	@Override
+	protected Void visitFuncDecl(AST node) {
+		// The statement section is always the last child
+		addMethod(node.intData, node.getChild(node.getChildren().size() - 1));
+		return null;
+	}
+
+	private void addMethod(int funcIdx, AST stmtNode) {
+		try {
+			compileMethod(funcIdx, stmtNode, false);
+		} catch (Bytecode.BranchTooFar e) {
+			// Only functions this large pay for the longer branches
+			compileMethod(funcIdx, stmtNode, true);
+		}
+		cw.addMethod(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC, ft.getName(funcIdx), descriptors[funcIdx], code);
+	}
+
+	private void compileMethod(int funcIdx, AST stmtNode, boolean longBranches) {
+		String name = ft.getName(funcIdx);
+		retType = ft.getType(funcIdx);
+
+		code = new Bytecode(cw, longBranches);
+		slots = new int[vt.size()];
+		Arrays.fill(slots, -1);
+
+		// The vars of a function that can't call itself back are copied to locals
+		int next = 0;
+		if (!recursive[funcIdx]) {
+			for (int i = 0; i < vt.size(); i++) {
+				if (name.equals(vt.getScope(i))) {
+					code.member(GETSTATIC, field(i), 1);
+					code.local(isFloat(vt.getType(i)) ? FSTORE : ISTORE, next);
+					slots[i] = next++;
+				}
+			}
+		}
+		code.reserveLocals(next);
+
+		visit(stmtNode);
+
+		// Reached without a return
+		if (retType != Type.NO_TYPE) pushZero(retType);
+		ret();
+	}
+
+	// A function must be declared before it is called, so only a call to
+	// itself can lead back to a function
+	private void findRecursive(AST funcList) {
+		for (AST child : funcList.getChildren()) {
+			recursive[child.intData] = calls(child, child.intData);
+		}
+	}
+
+	private static boolean calls(AST node, int funcIdx) {
+		if (node.kind == NodeKind.FUNC_CALL_NODE && node.intData == funcIdx) return true;
+
+		for (AST child : node.getChildren()) {
+			if (calls(child, funcIdx)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected Void visitFuncArgs(AST node) {
+		return null;
+	}
+
+	@Override
+	protected Void visitExpressionList(AST node) {
+		return null;
+	}
+
+}
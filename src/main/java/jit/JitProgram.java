@@ -0,0 +1,67 @@
+package jit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import code.InputSource;
+import code.OutputSink;
+import tables.StrTable;
+
+/*
+ * A program compiled by the JitCompiler and loaded into the JVM.
+ * Each program gets its own class loader, so its class can be unloaded
+ * once the program is not used anymore.
+ */
+public final class JitProgram {
+
+	private final MethodHandle entry;
+	private final StrTable st;
+
+	JitProgram(ClassWriter cw, String entryName, StrTable st) {
+		byte[] bytes = cw.toByteArray();
+		Class<?> cls = new Loader().define(cw.getName().replace('/', '.'), bytes);
+
+		try {
+			this.entry = MethodHandles.publicLookup().findStatic(
+				cls, entryName, MethodType.methodType(void.class, JitRuntime.class));
+		} catch (ReflectiveOperationException e) {
+			throw new Error("Generated class has no entry point! Aborting", e);
+		}
+		this.st = st;
+	}
+
+	public void run() {
+		try (InputSource in = InputSource.stdin()) {
+			run(in, new OutputSink(System.out));
+		}
+	}
+
+	public void run(InputSource in, OutputSink out) {
+		// Strings read at runtime are added to a copy, the compiler's table stays intact
+		StrTable runSt = new StrTable();
+		runSt.addAll(st);
+
+		try {
+			entry.invokeExact(new JitRuntime(runSt, in, out));
+		} catch (RuntimeException | Error e) {
+			// Errors from the Go program, such as a division by zero, go up as they are
+			throw e;
+		} catch (Throwable e) {
+			throw new Error(e);
+		} finally {
+			out.flush();
+		}
+	}
+
+	private static final class Loader extends ClassLoader {
+		Loader() {
+			super(JitProgram.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+}
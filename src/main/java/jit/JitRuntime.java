@@ -0,0 +1,102 @@
+package jit;
+
+import code.InputSource;
+import code.OutputSink;
+import tables.StrTable;
+
+/*
+ * Operations the generated code calls for what has no JVM instruction:
+ * input, output and string comparisons. Reads and prints exactly like the
+ * code.Interpreter does.
+ * Must stay public, since the generated class is in another class loader.
+ */
+public final class JitRuntime {
+
+	private final StrTable st;
+	private final InputSource in;
+	private final OutputSink out;
+
+	JitRuntime(StrTable st, InputSource in, OutputSink out) {
+		this.st = st;
+		this.in = in;
+		this.out = out;
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Input
+	 *------------------------------------------------------------------------------*/
+
+	public int readInt() {
+		prompt("read (int): ");
+		return in.nextInt();
+	}
+
+	public float readFloat() {
+		prompt("read (float32): ");
+		return in.nextFloat();
+	}
+
+	public int readBool() {
+		int value;
+		do {
+			prompt("read (bool - 0 = false, 1 = true): ");
+			value = in.nextInt();
+		} while (value != 0 && value != 1);
+		return value;
+	}
+
+	// Returns the index of the string in the string table
+	public int readString() {
+		prompt("read (str): ");
+
+		// Reads a whole line, so sentences with spaces are kept together
+		String s = in.nextLine();
+
+		return st.addString(s);
+	}
+
+	// The output is flushed before reading, so the prompt shows up
+	private void prompt(String text) {
+		out.writeString(text);
+		out.flush();
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Output
+	 *------------------------------------------------------------------------------*/
+
+	// Every value is followed by a space, endLine finishes the output statement
+
+	public void writeInt(int value) {
+		out.writeInt(value);
+		out.writeByte(' ');
+	}
+
+	public void writeFloat(float value) {
+		out.writeFloat(value);
+		out.writeByte(' ');
+	}
+
+	public void writeBool(int value) {
+		out.writeBool(value != 0);
+		out.writeByte(' ');
+	}
+
+	public void writeString(int strIdx) {
+		out.writeString(st.getText(strIdx));
+		out.writeByte(' ');
+	}
+
+	public void endLine() {
+		out.newLine();
+	}
+
+	/*------------------------------------------------------------------------------*
+	 *	Strings
+	 *------------------------------------------------------------------------------*/
+
+	public int compareStrings(int l, int r) {
+		return st.compareStrings(l, r);
+	}
+
+}
@@ -2,32 +2,42 @@ package tables;
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import typing.Type;
 
 public class FuncTable {
 	
+	private final Symbols symbols;
     private List<Entry> table = new ArrayList<Entry>();
+	private Map<Integer, Integer> index = new HashMap<Integer, Integer>();	// Name to entry
 
-	public int lookupFunc(String s) {
-		for (int i = 0; i < table.size(); i++) {
-			if (table.get(i).name.equals(s)) {
-				return i;
-			}
-		}
-		return -1;
+	public FuncTable() {
+		this(new Symbols());
+	}
+
+	// Names are ids interned by the given symbols
+	public FuncTable(Symbols symbols) {
+		this.symbols = symbols;
+	}
+
+	public int lookupFunc(int name) {
+		Integer idx = index.get(name);
+		return idx != null ? idx : -1;
 	}
 
-	public int addFunc(String s, int line, Type type, int argsSize) {
-		Entry entry = new Entry(s, line, type, argsSize);
+	public int addFunc(int name, int line, Type type, int argsSize) {
+		Entry entry = new Entry(name, line, type, argsSize);
 		int idxAdded = table.size();
 		table.add(entry);
+		index.put(name, idxAdded);
 		return idxAdded;
 	}
 
 	public String getName(int i) {
-		return table.get(i).name;
+		return symbols.getName(table.get(i).name);
 	}
 
 	public int getLine(int i) {
@@ -42,13 +52,26 @@ public class FuncTable {
 		return table.get(i).argsSize;
 	}
 
+	// Max amount of interpreter stack slots the function body uses
+	public int getStackDepth(int i) {
+		return table.get(i).stackDepth;
+	}
+
+	public void setStackDepth(int i, int stackDepth) {
+		table.get(i).stackDepth = stackDepth;
+	}
+
+	public int size() {
+		return table.size();
+	}
+
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		Formatter f = new Formatter(sb);
 		f.format("Functions table:\n");
 		for (int i = 0; i < table.size(); i++) {
-			f.format("Entry %d -- name: %s, line: %d, type: %s, argsSize: '%d'\n", 
-                i, getName(i), getLine(i), getType(i).toString(), getArgsSize(i)
+			f.format("Entry %d -- name: %s, line: %d, type: %s, argsSize: '%d', stackDepth: %d\n", 
+                i, getName(i), getLine(i), getType(i).toString(), getArgsSize(i), getStackDepth(i)
             );
 		}
 		f.close();
@@ -56,12 +79,13 @@ public class FuncTable {
 	}
 
 	private final class Entry {
-		String name;
+		int name;
 		int line;
 		Type type;
         int argsSize;
+		int stackDepth;
 
-		Entry(String name, int line, Type type, int argsSize) {
+		Entry(int name, int line, Type type, int argsSize) {
 			this.name = name;
 			this.line = line;
 			this.type = type;
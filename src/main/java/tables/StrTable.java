@@ -1,29 +1,82 @@
 package tables;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/*
+ * The strings of a program, literals with their quotes and strings read at
+ * runtime. Each string is also kept as it is printed, without the quotes, so
+ * printing does not build it again, and equal strings share the index of
+ * their first entry, so testing equality only compares indexes.
+ * Entries are only ever added, which keeps all of that in step.
+ */
+public final class StrTable {
 
-@SuppressWarnings("serial")
-public final class StrTable extends ArrayList<String> {
+	private final List<String> strings = new ArrayList<String>();
+	private final Map<String, Integer> index = new HashMap<String, Integer>();	// First entry of each string
+	private final List<String> texts = new ArrayList<String>();
+	private int[] firsts = new int[16];	// First entry equal to each one
 
 	public int addString(String s) {
-		int i;
-		for (i = 0; i < this.size(); i++) {
-			if (this.get(i).equals(s)) {
-				return i;
-			}
+		Integer i = index.get(s);
+		if (i != null) {
+			return i;
 		}
-		super.add(s);
-		return i;
+		add(s);
+		return strings.size() - 1;
+	}
+
+	// Adds the string as a new entry even if it is already in the table, so a
+	// program loaded from a file keeps its indexes
+	public void add(String s) {
+		int i = strings.size();
+		Integer first = index.putIfAbsent(s, i);
+		if (i == firsts.length) firsts = Arrays.copyOf(firsts, i * 2);
+		firsts[i] = first != null ? first : i;
+
+		texts.add(s.indexOf('"') >= 0 ? s.replace("\"", "") : s);
+		strings.add(s);
+	}
+
+	// Adds every entry of the other table, at the same indexes if this one is empty
+	public void addAll(StrTable other) {
+		for (int i = 0; i < other.size(); i++) {
+			add(other.get(i));
+		}
+	}
+
+	public String get(int i) {
+		return strings.get(i);
+	}
+
+	public int size() {
+		return strings.size();
+	}
+
+	// The string as printed, without the quotes
+	public String getText(int i) {
+		return texts.get(i);
+	}
+
+	public boolean equalStrings(int l, int r) {
+		return firsts[l] == firsts[r];
+	}
+
+	// Only the ordering needs the characters
+	public int compareStrings(int l, int r) {
+		return equalStrings(l, r) ? 0 : get(l).compareTo(get(r));
 	}
 
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		Formatter f = new Formatter(sb);
 		f.format("Strings table:\n");
-		for (int i = 0; i < this.size(); i++) {
-			f.format("Entry %d -- %s\n", i, this.get(i));
+		for (int i = 0; i < strings.size(); i++) {
+			f.format("Entry %d -- %s\n", i, strings.get(i));
 		}
 		f.close();
 		return sb.toString();
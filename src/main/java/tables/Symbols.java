@@ -0,0 +1,36 @@
+package tables;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Interns the identifiers of a program into integer ids, so the tables can
+ * look names up by id without comparing strings. The same name always gets
+ * the same id, starting from 0.
+ */
+public final class Symbols {
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final List<String> names = new ArrayList<String>();
+
+	public int intern(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	public String getName(int id) {
+		return names.get(id);
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+}
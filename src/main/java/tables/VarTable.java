@@ -2,36 +2,54 @@ package tables;
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import typing.Type;
 
 public final class VarTable {
 
+	private final Symbols symbols;
 	private List<Entry> table = new ArrayList<Entry>();
+	private Map<Long, Integer> index = new HashMap<Long, Integer>();	// (scope, name) to entry
 
-	public int lookupVar(String name, String scope) {
-		for (int i = 0; i < table.size(); i++) {
-			if (table.get(i).name.equals(name) && table.get(i).scope.equals(scope)) {
-				return i;
-			}
-		}
-		return -1;
+	public VarTable() {
+		this(new Symbols());
+	}
+
+	// Names and scopes are ids interned by the given symbols
+	public VarTable(Symbols symbols) {
+		this.symbols = symbols;
+	}
+
+	public Symbols getSymbols() {
+		return symbols;
+	}
+
+	public int lookupVar(int name, int scope) {
+		Integer idx = index.get(key(name, scope));
+		return idx != null ? idx : -1;
 	}
 
-	public int addVar(String name, String scope, int line, Type type, int argSize) {
+	public int addVar(int name, int scope, int line, Type type, int argSize) {
 		Entry entry = new Entry(name, scope, line, type, argSize);
 		int idxAdded = table.size();
 		table.add(entry);
+		index.put(key(name, scope), idxAdded);
 		return idxAdded;
 	}
 
+	private static long key(int name, int scope) {
+		return ((long) scope << 32) | (name & 0xFFFFFFFFL);
+	}
+
 	public String getName(int i) {
-		return table.get(i).name;
+		return symbols.getName(table.get(i).name);
 	}
 
 	public String getScope(int i) {
-		return table.get(i).scope;
+		return symbols.getName(table.get(i).scope);
 	}
 
 	public int getLine(int i) {
@@ -64,14 +82,14 @@ public final class VarTable {
 	}
 
 	private final class Entry {
-		String name;
-		String scope;
+		int name;
+		int scope;
 		int line;
 		Type type;
 		int argSize;		
 
 
-		Entry(String name, String scope, int line, Type type, int argSize) {
+		Entry(int name, int scope, int line, Type type, int argSize) {
 			this.name = name;
 			this.scope = scope;
 			this.line = line;